@@ -0,0 +1,91 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Checks that a warmed up step doesn't allocate anything, for every population store, with and without locations.
+ * Runs some steps first so the JIT and any lazy setup are out of the way, then watches the bytes allocated by the
+ * stepping thread (through StepMetrics) for a while.  Exits with status 1, listing the offenders, if any step allocated.
+ *
+ *   gradle check
+ *
+ * runs it as part of the build, so a step that starts allocating fails the build.  It can also be run on its own:
+ *
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out AllocationCheck
+ *
+ * Options: -people (how many, default 2000), -warmup and -steps (how many steps of each, default 200 and 50),
+ * -threads (0 by default - the tiles' own threads aren't watched, only the one calling step()),
+ * and -allow (bytes a step may allocate, default 0).  The fork/join pool allocates a few bytes of its own
+ * every phase, however many people there are, so threaded steps need something like -allow 128.
+ *
+ */
+public class AllocationCheck implements MetricsListener {
+
+	//bytes a step may allocate without counting as bad
+	private long allowedBytes;
+	//only steps after the warm up count
+	private boolean watching;
+
+	private long worstStepBytes;
+	private int badSteps;
+
+	public void stepFinished(SimulationEngine engine, StepMetrics metrics) {
+		if(watching && metrics.getAllocatedBytes() > allowedBytes) {
+			badSteps++;
+			worstStepBytes = Math.max(worstStepBytes, metrics.getAllocatedBytes());
+		}
+	}
+
+	public static void main(String[] args) {
+		int people = 2000;
+		int warmup = 200;
+		int steps = 50;
+		int threads = 0;
+		long allowed = 0;
+		if(args.length % 2 != 0) {
+			System.err.println("Missing a value for " + args[args.length - 1]);
+			System.exit(1);
+		}
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-people")) people = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-warmup")) warmup = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-steps")) steps = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-threads")) threads = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-allow")) allowed = Long.parseLong(args[i + 1]);
+			else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		boolean failed = false;
+		for(int store : new int[] {ModelParameters.OBJECT_STORE, ModelParameters.ARRAY_STORE, ModelParameters.OFF_HEAP_STORE}) {
+			for(boolean useLocations : new boolean[] {false, true}) {
+				ModelParameters params = new ModelParameters(.05, .02, true, 50, people, people / 20, warmup + steps, true, useLocations, false, 3, 3, .01);
+				params.populationStore = store;
+				params.threads = threads;
+				params.seed = 42;
+				SimulationEngine engine = new SimulationEngine(params);
+
+				//listen during the warm up too, so the measuring itself is warmed up
+				AllocationCheck check = new AllocationCheck();
+				check.allowedBytes = allowed;
+				engine.addMetricsListener(check);
+				engine.run(warmup);
+				check.watching = true;
+				engine.run(steps);
+				engine.removeMetricsListener(check);
+				engine.shutdown();
+
+				String name = (store == ModelParameters.ARRAY_STORE ? "arrays " : store == ModelParameters.OFF_HEAP_STORE ? "offheap" : "objects")
+						+ " locations " + useLocations;
+				if(check.badSteps == 0) {
+					System.out.println(name + ": no allocations in " + steps + " steps");
+				} else {
+					System.out.println(name + ": " + check.badSteps + " of " + steps + " steps allocated, up to " + check.worstStepBytes + " bytes");
+					failed = true;
+				}
+			}
+		}
+		if(failed)
+			System.exit(1);
+	}
+}
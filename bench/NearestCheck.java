@@ -0,0 +1,128 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Checks that the engine's search for the nearest infective, which only looks in the infective grid cells next to
+ * someone, finds the same infective as checking everyone would: the closest one whose square overlaps the square of
+ * "radius" 2 around them, ties going to the lowest index.  Runs crowded random worlds - between walls, on a torus and
+ * with locations, for every population store - for a few steps at a time, and after each stretch compares every
+ * person's answer with a scan through the whole population.  Exits with status 1, listing the first few differences,
+ * if any answer isn't the same.
+ *
+ *   gradle check
+ *
+ * runs it as part of the build.  It can also be run on its own:
+ *
+ *   javac -d out src/*.java bench/*.java
+ *   java -cp out NearestCheck
+ *
+ * Options: -seeds (how many random worlds of each kind, default 10), -people (how many in each, default 600),
+ * and -rounds (how many times to compare in each, default 5, a few steps apart).
+ *
+ */
+public class NearestCheck {
+
+	//steps between comparisons, so people have moved around and some have become infective or gotten better
+	private static final int STEPS_BETWEEN = 7;
+
+	//differences printed for each kind of world, at most
+	private static final int MAX_SHOWN = 5;
+
+	/*
+	 * The nearest infective to person <i>, checking everyone - how the engine found them before it had a grid.
+	 * Works out the distance around a torus itself rather than asking the LocationGrid, so a mistake there shows up too
+	 */
+	static int bruteForceNearest(SimulationEngine engine, int i) {
+		Population people = engine.getPopulation();
+		if(people.getType(i) == Person.INFECTIVE)
+			return Population.NONE;
+		LocationGrid world = engine.getLocations();
+		int reachX = (SimulationEngine.AVOID_RADIUS + 1) * Person.WIDTH;
+		int reachY = (SimulationEngine.AVOID_RADIUS + 1) * Person.HEIGHT;
+
+		int nearest = Population.NONE;
+		long nearestDistance = Long.MAX_VALUE;
+		for(int j = 0; j < people.size(); j++) {
+			if(j == i || people.getType(j) != Person.INFECTIVE) continue;
+			long xDiff = Math.abs(people.getX(i) - people.getX(j));
+			long yDiff = Math.abs(people.getY(i) - people.getY(j));
+			if(world.isTorus()) {
+				xDiff = Math.min(xDiff, world.getAreaWidth() - xDiff);
+				yDiff = Math.min(yDiff, world.getAreaHeight() - yDiff);
+			}
+			if(xDiff >= reachX || yDiff >= reachY) continue;
+			//going through in order, only a strictly closer infective replaces the one found first
+			long distance = xDiff * xDiff + yDiff * yDiff;
+			if(distance < nearestDistance) {
+				nearestDistance = distance;
+				nearest = j;
+			}
+		}
+		return nearest;
+	}
+
+	public static void main(String[] args) {
+		int seeds = 10;
+		int people = 600;
+		int rounds = 5;
+		if(args.length % 2 != 0) {
+			System.err.println("Missing a value for " + args[args.length - 1]);
+			System.exit(1);
+		}
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-seeds")) seeds = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-people")) people = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-rounds")) rounds = Integer.parseInt(args[i + 1]);
+			else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		boolean failed = false;
+		for(int store : new int[] {ModelParameters.OBJECT_STORE, ModelParameters.ARRAY_STORE, ModelParameters.OFF_HEAP_STORE}) {
+			for(int world = 0; world < 3; world++) {
+				boolean torus = world == 1;
+				boolean useLocations = world == 2;
+				String name = (store == ModelParameters.ARRAY_STORE ? "arrays " : store == ModelParameters.OFF_HEAP_STORE ? "offheap" : "objects")
+						+ (torus ? " torus    " : useLocations ? " locations" : " walls    ");
+				long compared = 0;
+				int wrong = 0;
+				for(int seed = 0; seed < seeds; seed++) {
+					//lots of infectives in a small world, with odd sizes so the torus' halfway point isn't a whole cell
+					ModelParameters params = new ModelParameters(.1, .05, true, 20, people, people / 4, rounds * STEPS_BETWEEN, true, useLocations, false, 3, 2, .05);
+					params.worldWidth = 301 + 2 * seed;
+					params.worldHeight = 203 + 2 * seed;
+					params.boundary = torus ? ModelParameters.TORUS : ModelParameters.WALLS;
+					params.populationStore = store;
+					params.seed = seed;
+					SimulationEngine engine = new SimulationEngine(params);
+					Population population = engine.getPopulation();
+					for(int round = 0; round < rounds; round++) {
+						engine.run(STEPS_BETWEEN);
+						engine.buildInfectiveGrid();
+						for(int i = 0; i < population.size(); i++) {
+							engine.findNearestInfectiveFor(i);
+							int expected = bruteForceNearest(engine, i);
+							int found = engine.getNearestInfective(i);
+							compared++;
+							if(found != expected) {
+								if(wrong < MAX_SHOWN)
+									System.out.println(name + ": seed " + seed + " round " + round + " person " + i + " at " + population.getX(i) + ", " + population.getY(i)
+											+ " - the grid found " + found + ", checking everyone found " + expected);
+								wrong++;
+							}
+						}
+					}
+					engine.shutdown();
+				}
+				if(wrong == 0) {
+					System.out.println(name + ": all " + compared + " searches matched");
+				} else {
+					System.out.println(name + ": " + wrong + " of " + compared + " searches were different");
+					failed = true;
+				}
+			}
+		}
+		if(failed)
+			System.exit(1);
+	}
+}
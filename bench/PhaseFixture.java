@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * One phase of a step, set up to be timed over and over from exactly the same state - for the JMH benchmarks in
+ * benchmarks.EngineBenchmark.
+ *
+ * The fixture runs a small engine for a few steps so people have moved and some are sick, then writes a Checkpoint.
+ * Before each timing, reset() restores that checkpoint into a fresh engine and runs the parts of the step that come
+ * before the phase being timed, so every invocation times the same phase of the same timestep: repeated recover
+ * passes can't drain the infectives, and repeated collide passes can't keep infecting people.
+ *
+ * JMH won't run benchmarks in the default package, and nothing in a package can name the engine's classes, so the
+ * benchmark only sees the fixture as an Object and calls these static methods through method handles.
+ *
+ */
+public class PhaseFixture {
+
+	//the phases, in the order they run in a step - "step" is a whole timestep
+	public static final String[] PHASES = {"step", "prepare", "infectiveGrid", "nearest", "move", "recover", "grid", "collide"};
+	private static final int STEP = 0;
+
+	//how many steps the snapshot is taken after
+	private static final int WARM_STEPS = 20;
+
+	private File snapshot;
+	private int phase;
+	private SimulationEngine engine;
+	private StreamRandom rng;
+
+	private PhaseFixture(File snapshot, int phase) {
+		this.snapshot = snapshot;
+		this.phase = phase;
+	}
+
+	/**
+	 * @return the parameters the benchmarks run with - SIR, avoiding infectives, 5% infective to start
+	 */
+	public static ModelParameters benchmarkParameters(int people, boolean useLocations, int store) {
+		ModelParameters params = new ModelParameters(.05, .02, true, 50, people, people / 20, 1000, true, useLocations, false, 3, 3, .01);
+		params.populationStore = store;
+		params.seed = 42;
+		return params;
+	}
+
+	/**
+	 * Take the snapshot that <phase> will be timed from, for <people> people, with or without locations, in <store>
+	 * (objects, arrays or offheap)
+	 * @return the fixture
+	 */
+	public static Object create(int people, boolean useLocations, String store, String phase) throws IOException {
+		int phaseIndex = -1;
+		for(int p = 0; p < PHASES.length; p++) {
+			if(PHASES[p].equals(phase))
+				phaseIndex = p;
+		}
+		if(phaseIndex < 0)
+			throw new IllegalArgumentException("No such phase " + phase);
+		int storeIndex;
+		if(store.equals("objects"))
+			storeIndex = ModelParameters.OBJECT_STORE;
+		else if(store.equals("arrays"))
+			storeIndex = ModelParameters.ARRAY_STORE;
+		else if(store.equals("offheap"))
+			storeIndex = ModelParameters.OFF_HEAP_STORE;
+		else
+			throw new IllegalArgumentException("store should be objects, arrays or offheap, not " + store);
+
+		SimulationEngine warm = new SimulationEngine(benchmarkParameters(people, useLocations, storeIndex));
+		warm.run(WARM_STEPS);
+		File snapshot = File.createTempFile("benchmark", ".ck");
+		snapshot.deleteOnExit();
+		Checkpoint.write(warm, snapshot);
+		return new PhaseFixture(snapshot, phaseIndex);
+	}
+
+	/**
+	 * Restore the snapshot, and run everything in the step that comes before the phase being timed
+	 */
+	public static void reset(Object fixture) throws IOException {
+		PhaseFixture f = (PhaseFixture) fixture;
+		f.engine = Checkpoint.restore(f.snapshot);
+		f.rng = f.engine.getRandomStreams().newGenerator();
+		for(int p = STEP + 1; p < f.phase; p++) {
+			f.runPhase(p);
+		}
+	}
+
+	/**
+	 * Run the phase being timed, once over everyone
+	 * @return a number that depends on what the phase did, for the benchmark to sink
+	 */
+	public static long run(Object fixture) {
+		PhaseFixture f = (PhaseFixture) fixture;
+		f.runPhase(f.phase);
+		Population people = f.engine.getPopulation();
+		return f.engine.getCounters().getCount(Person.INFECTIVE) + people.getX(people.size() - 1);
+	}
+
+	/**
+	 * Throw the snapshot away
+	 */
+	public static void close(Object fixture) {
+		((PhaseFixture) fixture).snapshot.delete();
+	}
+
+	//one pass of phase <p> over everyone
+	private void runPhase(int p) {
+		Population people = engine.getPopulation();
+		ModelParameters params = engine.getParameters();
+		int step = engine.getCurrentTimestep();
+		int n = people.size();
+		switch(PHASES[p]) {
+		case "step":
+			engine.step();
+			break;
+		case "prepare":
+			for(int i = 0; i < n; i++) {
+				rng.select(step, RandomStreams.PHASE_PREPARE, i);
+				engine.prepare(i, rng, engine.getCounters());
+			}
+			break;
+		case "infectiveGrid":
+			engine.buildInfectiveGrid();
+			break;
+		case "nearest":
+			for(int i = 0; i < n; i++) {
+				engine.findNearestInfectiveFor(i);
+			}
+			break;
+		case "move":
+			for(int i = 0; i < n; i++) {
+				rng.select(step, RandomStreams.PHASE_MOVE, i);
+				people.move(i, engine.getNearestInfective(i), rng);
+			}
+			break;
+		case "recover":
+			for(int i = 0; i < n; i++) {
+				rng.select(step, RandomStreams.PHASE_MOVE, i);
+				people.recover(i, params, rng, engine.getCounters());
+			}
+			break;
+		case "grid":
+			engine.updateGrid();
+			break;
+		default:
+			for(int i = 0; i < n; i++) {
+				engine.checkCollisions(i, step, rng, engine.getCounters(), null);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * JMH benchmarks of the per-timestep hot paths of the SimulationEngine, so we can tell whether a change helps or hurts:
+ *
+ *   step           a whole timestep
+ *   prepare        saving everyone's previous position and changing locations
+ *   infectiveGrid  putting the infectives into their grid
+ *   nearest        finding everyone's nearest infective
+ *   move           moving everyone
+ *   recover        recovering and losing immunity
+ *   grid           moving everyone to their new grid cell
+ *   collide        checking everyone for collisions
+ *
+ * for every combination of population size, locations on or off, and population store.  Every invocation is one pass
+ * over everyone, timed from the same snapshot of the same timestep - see PhaseFixture.
+ *
+ *   gradle jmh
+ *   gradle jmh -Pjmh="-p people=1000000 -p phase=collide,step -rf json -rff results.json"
+ *
+ * The engine's classes are all in the default package, which JMH won't benchmark and nothing in a package can name,
+ * so the fixture is reached through method handles.  They're static final, so the JIT inlines them like direct calls.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+	private static final MethodHandle CREATE;
+	private static final MethodHandle RESET;
+	private static final MethodHandle RUN;
+	private static final MethodHandle CLOSE;
+	static {
+		try {
+			Class<?> fixture = Class.forName("PhaseFixture");
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			CREATE = lookup.findStatic(fixture, "create", MethodType.methodType(Object.class, int.class, boolean.class, String.class, String.class));
+			RESET = lookup.findStatic(fixture, "reset", MethodType.methodType(void.class, Object.class));
+			RUN = lookup.findStatic(fixture, "run", MethodType.methodType(long.class, Object.class));
+			CLOSE = lookup.findStatic(fixture, "close", MethodType.methodType(void.class, Object.class));
+		} catch(ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int people;
+
+	@Param({"false", "true"})
+	public boolean locations;
+
+	@Param({"objects", "arrays", "offheap"})
+	public String store;
+
+	@Param({"step", "prepare", "infectiveGrid", "nearest", "move", "recover", "grid", "collide"})
+	public String phase;
+
+	private Object fixture;
+
+	@Setup(Level.Trial)
+	public void snapshot() throws Throwable {
+		fixture = (Object) CREATE.invokeExact(people, locations, store, phase);
+	}
+
+	//put everything back the way the snapshot had it before every single pass
+	@Setup(Level.Invocation)
+	public void restore() throws Throwable {
+		RESET.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public void pass(Blackhole sink) throws Throwable {
+		sink.consume((long) RUN.invokeExact(fixture));
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Throwable {
+		CLOSE.invokeExact(fixture);
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * A Population kept in parallel arrays of primitives, one array per field.
+ * About 24 bytes a person with no objects per person at all, so tens of millions of people
+ * fit in a normal heap, and walking through everyone reads memory in order.
+ *
+ */
+public class ArrayPopulation extends Population {
+
+	private int size;
+
+	//current position and type
+	private int[] x;
+	private int[] y;
+	private byte[] state;
+
+	//position and type from before the latest move
+	private int[] previousX;
+	private int[] previousY;
+	private byte[] previousState;
+
+	//counts down time until no longer immune
+	private int[] immunityCounter;
+
+	//the location each person needs to stay in
+	private short[] locationId;
+
+	public ArrayPopulation(LocationGrid locations, int capacity) {
+		super(locations);
+		if(locations.getNumLocations() > Short.MAX_VALUE + 1)
+			throw new IllegalArgumentException("too many locations for an ArrayPopulation: " + locations.getNumLocations());
+		x = new int[capacity];
+		y = new int[capacity];
+		state = new byte[capacity];
+		previousX = new int[capacity];
+		previousY = new int[capacity];
+		previousState = new byte[capacity];
+		immunityCounter = new int[capacity];
+		locationId = new short[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int add(int startX, int startY, int type, int startLocationId) {
+		if(size == x.length)
+			throw new IllegalStateException("the population is full");
+		int i = size++;
+		x[i] = previousX[i] = startX;
+		y[i] = previousY[i] = startY;
+		state[i] = previousState[i] = (byte) type;
+		immunityCounter[i] = 0;
+		locationId[i] = (short) startLocationId;
+		return i;
+	}
+
+	public int getX(int i) {
+		return x[i];
+	}
+
+	public int getY(int i) {
+		return y[i];
+	}
+
+	public void setPosition(int i, int newX, int newY) {
+		x[i] = newX;
+		y[i] = newY;
+	}
+
+	public int getType(int i) {
+		return state[i];
+	}
+
+	public void setType(int i, int type) {
+		state[i] = (byte) type;
+	}
+
+	public int getPreviousX(int i) {
+		return previousX[i];
+	}
+
+	public int getPreviousY(int i) {
+		return previousY[i];
+	}
+
+	public int getPreviousType(int i) {
+		return previousState[i];
+	}
+
+	public void savePrevious(int i) {
+		previousX[i] = x[i];
+		previousY[i] = y[i];
+		previousState[i] = state[i];
+	}
+
+	public int getImmunityCounter(int i) {
+		return immunityCounter[i];
+	}
+
+	public void setImmunityCounter(int i, int count) {
+		immunityCounter[i] = count;
+	}
+
+	public int getLocationId(int i) {
+		return locationId[i];
+	}
+
+	public void setLocationId(int i, int newLocationId) {
+		locationId[i] = (short) newLocationId;
+	}
+}
@@ -0,0 +1,174 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Properties;
+
+import javax.management.JMException;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs the model from the command line, with no windows, as fast as it will go.
+ * The parameters come from a ParameterFile, and anything after the file names overrides it, so a script can
+ * run the same file with lots of seeds:
+ *
+ *   java BatchRunner params.properties totals.csv seed=12 threads=4
+ *
+ * The totals for every timestep are written by a TrajectoryOutput as the run goes - to standard out if no output file is
+ * given, in the binary format if the file name ends in .bin, and as CSV otherwise.  -locations adds every location's
+ * counts to each row.  The engine only keeps as many timesteps as its stop conditions look back at, unless the run is
+ * checkpointed, since a checkpoint carries them all.
+ * -checkpoint writes a Checkpoint of the run to a file when it ends, and -checkpointEvery also writes one every so
+ * many timesteps along the way.  -resume carries on from a checkpoint instead of starting again:
+ *
+ *   java BatchRunner params.properties totals.csv -resume run.ck -checkpoint run.ck -checkpointEvery 500
+ *
+ * A resumed run uses the checkpoint's seed unless the overrides give one, and its output starts with the totals of the
+ * timesteps from before the checkpoint, so it's the same as if the run had never stopped (apart from the location
+ * counts, which a checkpoint doesn't keep for the timesteps before it).
+ * With solver=ode, gillespie or tauleap, a CompartmentModel is solved instead of moving every person.
+ * While it runs, where the time is going can be watched over JMX, and a summary is printed at the end.
+ *
+ */
+public class BatchRunner {
+
+	/**
+	 * Write the totals of every timestep <engine> has run as CSV - timestep, susceptible, infective, recovered -
+	 * followed by how many people got infected, recovered and lost their immunity during that timestep
+	 */
+	public static void writeTotals(SimulationEngine engine, Writer out) throws IOException {
+		writeTotals(engine.getTotals(), engine.getIncidence(), engine.getCurrentTimestep(), out);
+	}
+
+	/**
+	 * Write the first <numTimesteps> timesteps of <totals> and <incidence> the same way, for a CompartmentModel say
+	 */
+	public static void writeTotals(int[][] totals, int[][] incidence, int numTimesteps, Writer out) throws IOException {
+		out.write("timestep,susceptible,infective,recovered,new_infections,new_recoveries,immunity_lost\n");
+		for(int t = 0; t < numTimesteps; t++) {
+			out.write(t + "," + totals[Person.SUSCEPTIBLE][t] + "," + totals[Person.INFECTIVE][t] + "," + totals[Person.RECOVERED][t]
+					+ "," + incidence[CompartmentCounters.INFECTION][t] + "," + incidence[CompartmentCounters.RECOVERY][t]
+					+ "," + incidence[CompartmentCounters.IMMUNITY_LOST][t] + "\n");
+		}
+	}
+
+	private static void usage() {
+		System.err.println("usage: java BatchRunner <parameter file> [<output csv or bin>] [-locations] [-resume <checkpoint>]"
+				+ " [-checkpoint <checkpoint> [-checkpointEvery <timesteps>]] [key=value ...]");
+		System.err.println("keys: " + String.join(", ", ParameterFile.KEYS));
+		System.exit(1);
+	}
+
+	//the value given for the flag before args[i] - there has to be one
+	private static String flagValue(String[] args, int i) {
+		if(i >= args.length)
+			usage();
+		return args[i];
+	}
+
+	/**
+	 * @param args the parameter file, then optionally the output file, then any overrides
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1)
+			usage();
+
+		//read the file, then apply the overrides on top of it
+		Properties properties = ParameterFile.load(new File(args[0]));
+		String outputFile = null;
+		boolean byLocation = false;
+		File resumeFrom = null;
+		File checkpointTo = null;
+		int checkpointEvery = 0;
+		ModelParameters params = null;
+		try {
+			for(int i = 1; i < args.length; i++) {
+				if(args[i].equals("-locations"))
+					byLocation = true;
+				else if(args[i].equals("-resume"))
+					resumeFrom = new File(flagValue(args, ++i));
+				else if(args[i].equals("-checkpoint"))
+					checkpointTo = new File(flagValue(args, ++i));
+				else if(args[i].equals("-checkpointEvery"))
+					checkpointEvery = Integer.parseInt(flagValue(args, ++i));
+				else if(args[i].indexOf('=') >= 0)
+					ParameterFile.override(properties, args[i]);
+				else if(outputFile == null && !args[i].startsWith("-"))
+					outputFile = args[i];
+				else
+					usage();
+			}
+			params = ParameterFile.fromProperties(properties);
+			if(resumeFrom != null && properties.getProperty("seed") == null)
+				params.seed = Checkpoint.readSeed(resumeFrom);
+		} catch(NumberFormatException e) {
+			usage();
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+
+		//every step is written as it happens, as binary for a .bin file and CSV otherwise
+		OutputStream out = outputFile == null ? System.out : new FileOutputStream(outputFile);
+		int format = outputFile != null && outputFile.endsWith(".bin") ? TrajectoryOutput.BINARY : TrajectoryOutput.CSV;
+
+		//every row goes to the output, so the engine needn't keep them - unless a checkpoint has to
+		if(checkpointTo == null)
+			params.keepAllTotals = false;
+
+		//run the whole thing, with the agents or with a CompartmentModel
+		long start = System.currentTimeMillis();
+		if(params.solver == ModelParameters.AGENT_SOLVER) {
+			SimulationEngine engine = null;
+			try {
+				engine = resumeFrom == null ? new SimulationEngine(params) : Checkpoint.restore(resumeFrom, params);
+			} catch(IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+			TrajectoryOutput output = new TrajectoryOutput(engine, out, format, byLocation);
+			for(int t = 0; t < engine.getCurrentTimestep(); t++) {
+				output.addStep(t, engine.getTotals(), engine.getIncidence());
+			}
+			CheckpointWriter checkpoints = null;
+			if(checkpointTo != null)
+				checkpoints = new CheckpointWriter(engine, checkpointTo, checkpointEvery > 0 ? checkpointEvery : Integer.MAX_VALUE);
+			EngineMetrics metrics = new EngineMetrics(engine);
+			try {
+				metrics.register("batch");
+			} catch(JMException e) {
+				System.err.println("Couldn't show the metrics over JMX: " + e.getMessage());
+			}
+			engine.run(params.numTimesteps);
+			engine.shutdown();
+			metrics.close();
+			output.close();
+			if(checkpoints != null) {
+				try {
+					checkpoints.close();
+				} catch(IOException e) {
+					System.err.println("Couldn't write the checkpoint: " + e.getMessage());
+				}
+			}
+			System.err.println("Ran " + params.initTotalPeople + " people for " + engine.getCurrentTimestep() + " timesteps with seed " + params.seed
+					+ " in " + (System.currentTimeMillis() - start) + " ms, stopped by " + engine.getStopReason());
+			if(output.getStalls() > 0)
+				System.err.println("Waited for the output " + output.getStalls() + " times");
+			System.err.print(metrics.summary());
+		} else {
+			//the model is quick, so just write it all once it's done.  It has no locations, or checkpoints
+			if(resumeFrom != null || checkpointTo != null)
+				System.err.println("Only the agent model can be checkpointed, so the run starts from the beginning");
+			CompartmentModel model = new CompartmentModel(params);
+			model.run(params.numTimesteps);
+			TrajectoryOutput output = new TrajectoryOutput(out, format, 0);
+			for(int t = 0; t < model.getCurrentTimestep(); t++) {
+				output.addStep(t, model.getTotals(), model.getIncidence());
+			}
+			output.close();
+			System.err.println("Solved " + params.initTotalPeople + " people for " + model.getCurrentTimestep() + " timesteps with contact rate "
+					+ model.getContactRate() + " in " + (System.currentTimeMillis() - start) + " ms, stopped by " + model.getStopReason());
+		}
+	}
+}
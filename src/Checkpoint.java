@@ -0,0 +1,305 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * A snapshot of a SimulationEngine between two steps, in a file, so the run can be picked back up later exactly where
+ * it stopped - or picked up lots of times with different parameters, to see what would have happened if.
+ *
+ * The file is a header, then everyone's x, y, type, immunity counter and location as one block of ints each, then the
+ * totals and incidence of every timestep so far.  It is written and read through memory mappings of those blocks, so
+ * saving or restoring even a big population is one pass over memory, with no parsing.
+ * Nothing else needs saving: everyone's previous position and type, the grids and the active cells are all worked
+ * out again from where everyone is at the start of the next step, and the random numbers only depend on the seed,
+ * the timestep and the person, so restoring the seed restores them too.
+ *
+ * A continued run gives exactly the totals the uninterrupted run would have, with any number of threads and either
+ * population store.
+ *
+ */
+public class Checkpoint {
+
+	//starts every checkpoint - "DMCK"
+	public static final int MAGIC = 0x444D434B;
+	public static final int VERSION = 3;
+
+	//the header is this long, whatever's in it, so the blocks after it line up
+	private static final int HEADER_BYTES = 256;
+
+	//the blocks of everyone's state, in the order they're in the file
+	private static final int X = 0;
+	private static final int Y = 1;
+	private static final int TYPE = 2;
+	private static final int IMMUNITY = 3;
+	private static final int LOCATION = 4;
+	private static final int NUM_PERSON_BLOCKS = 5;
+
+	//the rows of totals and incidence, in the order they're in the file
+	private static final int[] TYPES = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+	private static final int[] INCIDENCE = {CompartmentCounters.INFECTION, CompartmentCounters.RECOVERY, CompartmentCounters.IMMUNITY_LOST};
+
+	private File file;
+	private ModelParameters savedParams;
+	private long masterSeed;
+	private int timestep;
+	private int numPeople;
+	private int numLocations;
+
+	/*
+	 * Read the header of <file>, leaving the rest for readPeople() and readTotals()
+	 */
+	private Checkpoint(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER_BYTES)
+				throw new IOException(file + " is not a checkpoint");
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if(header.getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint");
+			int version = header.getInt();
+			if(version < 1 || version > VERSION)
+				throw new IOException(file + " is a version " + version + " checkpoint, and only version " + VERSION + " can be read");
+			masterSeed = header.getLong();
+			timestep = header.getInt();
+			numPeople = header.getInt();
+			numLocations = header.getInt();
+			savedParams = readParameters(header, version);
+			if(channel.size() < blockOffset(NUM_PERSON_BLOCKS) + 6L * 4 * timestep)
+				throw new IOException(file + " is cut short");
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write where <engine> is now to <file>, replacing it - call on the thread that steps it, between steps.
+	 * The file is written next to <file> first and then moved over it, so a crash part way through never leaves
+	 * a broken checkpoint behind
+	 */
+	public static void write(SimulationEngine engine, File file) throws IOException {
+		Population people = engine.getPopulation();
+		int n = people.size();
+		int t = engine.getCurrentTimestep();
+		File parent = file.getAbsoluteFile().getParentFile();
+		File temp = Files.createTempFile(parent.toPath(), "checkpoint", ".tmp").toFile();
+		try {
+			RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+			try {
+				FileChannel channel = raf.getChannel();
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+				header.putInt(MAGIC);
+				header.putInt(VERSION);
+				header.putLong(engine.getRandomStreams().getMasterSeed());
+				header.putInt(t);
+				header.putInt(n);
+				header.putInt(engine.getLocations().getNumLocations());
+				writeParameters(header, engine.getParameters());
+				header.force();
+
+				//each block gets its own mapping, so no one mapping has to be bigger than an int can count
+				for(int block = 0; block < NUM_PERSON_BLOCKS; block++) {
+					MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, blockOffset(block, n), 4L * n);
+					IntBuffer ints = mapped.asIntBuffer();
+					for(int i = 0; i < n; i++) {
+						ints.put(i, get(people, block, i));
+					}
+					mapped.force();
+				}
+
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, blockOffset(NUM_PERSON_BLOCKS, n), 6L * 4 * t);
+				IntBuffer ints = mapped.asIntBuffer();
+				for(int type : TYPES) {
+					ints.put(engine.getTotals()[type], 0, t);
+				}
+				for(int kind : INCIDENCE) {
+					ints.put(engine.getIncidence()[kind], 0, t);
+				}
+				mapped.force();
+			} finally {
+				raf.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * @return the engine saved in <file>, with the parameters and seed it was saved with, ready to run the rest of its timesteps
+	 */
+	public static SimulationEngine restore(File file) throws IOException {
+		Checkpoint checkpoint = new Checkpoint(file);
+		return new SimulationEngine(checkpoint.savedParams, new RandomStreams(checkpoint.masterSeed), checkpoint);
+	}
+
+	/**
+	 * @return the engine saved in <file>, carrying on from where it was with <params> instead - a different alpha,
+	 * seed, number of threads or whatever.  The people and locations can't change, so <params> needs the same
+	 * population, world and locations, and at least as many timesteps as have already been run
+	 * @throws IllegalArgumentException if <params> doesn't fit the checkpoint
+	 */
+	public static SimulationEngine restore(File file, ModelParameters params) throws IOException {
+		Checkpoint checkpoint = new Checkpoint(file);
+		ModelParameters saved = checkpoint.savedParams;
+		if(params.initTotalPeople != checkpoint.numPeople)
+			throw new IllegalArgumentException("the checkpoint has " + checkpoint.numPeople + " people, not " + params.initTotalPeople);
+		if(params.worldWidth != saved.worldWidth || params.worldHeight != saved.worldHeight || params.boundary != saved.boundary)
+			throw new IllegalArgumentException("the checkpoint has a different world");
+		if(params.useLocations != saved.useLocations
+				|| (params.useLocations && (params.numLocationCols != saved.numLocationCols || params.numLocationRows != saved.numLocationRows)))
+			throw new IllegalArgumentException("the checkpoint has different locations");
+		if(params.numTimesteps < checkpoint.timestep)
+			throw new IllegalArgumentException("the checkpoint is already at timestep " + checkpoint.timestep);
+		return new SimulationEngine(params, new RandomStreams(params.seed), checkpoint);
+	}
+
+	/**
+	 * @return the parameters the engine in <file> was running with
+	 */
+	public static ModelParameters readParameters(File file) throws IOException {
+		return new Checkpoint(file).savedParams;
+	}
+
+	/**
+	 * @return the seed of the random numbers the engine in <file> was using, which can differ from its parameters' seed
+	 */
+	public static long readSeed(File file) throws IOException {
+		return new Checkpoint(file).masterSeed;
+	}
+
+	/*
+	 * Put everyone back into <people>, counting them in <counters> - for the engine's constructor
+	 */
+	void readPeople(Population people, CompartmentCounters counters) {
+		if(numLocations != people.getLocations().getNumLocations())
+			throw new IllegalArgumentException("the checkpoint has " + numLocations + " locations, not " + people.getLocations().getNumLocations());
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				IntBuffer[] blocks = new IntBuffer[NUM_PERSON_BLOCKS];
+				for(int block = 0; block < NUM_PERSON_BLOCKS; block++) {
+					blocks[block] = channel.map(FileChannel.MapMode.READ_ONLY, blockOffset(block), 4L * numPeople).asIntBuffer();
+				}
+				for(int i = 0; i < numPeople; i++) {
+					int type = blocks[TYPE].get(i);
+					int loc = blocks[LOCATION].get(i);
+					people.add(blocks[X].get(i), blocks[Y].get(i), type, loc);
+					people.setImmunityCounter(i, blocks[IMMUNITY].get(i));
+					counters.add(loc, type);
+				}
+			} finally {
+				raf.close();
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("couldn't read " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * Fill in the timesteps of <totals> and <incidence> that had been run - for the engine's constructor
+	 * @return the timestep to carry on from
+	 */
+	int readTotals(int[][] totals, int[][] incidence) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				IntBuffer ints = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, blockOffset(NUM_PERSON_BLOCKS), 6L * 4 * timestep).asIntBuffer();
+				for(int type : TYPES) {
+					ints.get(totals[type], 0, timestep);
+				}
+				for(int kind : INCIDENCE) {
+					ints.get(incidence[kind], 0, timestep);
+				}
+			} finally {
+				raf.close();
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("couldn't read " + file + ": " + e.getMessage(), e);
+		}
+		return timestep;
+	}
+
+	//where block <block> starts in the file
+	private long blockOffset(int block) {
+		return blockOffset(block, numPeople);
+	}
+
+	//the same for a file being written for <n> people
+	private static long blockOffset(int block, int n) {
+		return HEADER_BYTES + 4L * n * block;
+	}
+
+	//what block <block> holds for person <i>
+	private static int get(Population people, int block, int i) {
+		switch(block) {
+		case X: return people.getX(i);
+		case Y: return people.getY(i);
+		case TYPE: return people.getType(i);
+		case IMMUNITY: return people.getImmunityCounter(i);
+		default: return people.getLocationId(i);
+		}
+	}
+
+	//also how a DistributedRunner hands its parameters to its workers
+	static void writeParameters(ByteBuffer out, ModelParameters params) {
+		out.putDouble(params.alpha);
+		out.putDouble(params.beta);
+		out.putInt(params.useSIR ? 1 : 0);
+		out.putInt(params.recoveryDelay);
+		out.putInt(params.initTotalPeople);
+		out.putInt(params.initNumInfectives);
+		out.putInt(params.numTimesteps);
+		out.putInt(params.moveAwayFromInfectives ? 1 : 0);
+		out.putInt(params.useLocations ? 1 : 0);
+		out.putInt(params.allInfectivesInSameLoc ? 1 : 0);
+		out.putInt(params.numLocationCols);
+		out.putInt(params.numLocationRows);
+		out.putDouble(params.changeLocationProb);
+		out.putInt(params.populationStore);
+		out.putLong(params.seed);
+		out.putInt(params.threads);
+		out.putInt(params.activeSet ? 1 : 0);
+		out.putInt(params.stopWhenNoInfectives ? 1 : 0);
+		out.putInt(params.steadyStateWindow);
+		out.putDouble(params.steadyStateTolerance);
+		out.putInt(params.solver);
+		out.putDouble(params.contactRate);
+		out.putInt(params.worldWidth);
+		out.putInt(params.worldHeight);
+		out.putInt(params.boundary);
+		out.putInt(params.shardByLocation ? 1 : 0);
+	}
+
+	//version 1 checkpoints are all of the default world, and only version 3 ones can be sharded
+	static ModelParameters readParameters(ByteBuffer in, int version) {
+		ModelParameters params = new ModelParameters(in.getDouble(), in.getDouble(), in.getInt() != 0, in.getInt(), in.getInt(), in.getInt(),
+				in.getInt(), in.getInt() != 0, in.getInt() != 0, in.getInt() != 0, in.getInt(), in.getInt(), in.getDouble());
+		params.populationStore = in.getInt();
+		params.seed = in.getLong();
+		params.threads = in.getInt();
+		params.activeSet = in.getInt() != 0;
+		params.stopWhenNoInfectives = in.getInt() != 0;
+		params.steadyStateWindow = in.getInt();
+		params.steadyStateTolerance = in.getDouble();
+		params.solver = in.getInt();
+		params.contactRate = in.getDouble();
+		if(version >= 2) {
+			params.worldWidth = in.getInt();
+			params.worldHeight = in.getInt();
+			params.boundary = in.getInt();
+		}
+		if(version >= 3)
+			params.shardByLocation = in.getInt() != 0;
+		return params;
+	}
+}
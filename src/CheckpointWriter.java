@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Writes a Checkpoint of its engine every so many timesteps, always to the same file, so a long run that gets killed
+ * can be picked back up from the last one with Checkpoint.restore().  The engine calls it at the end of every step,
+ * without measuring anything.
+ * Writing a checkpoint takes a pass over everyone, so every few hundred timesteps is plenty for a big population.
+ *
+ */
+public class CheckpointWriter {
+
+	private SimulationEngine engine;
+	private File file;
+	private int every;
+	private int written;
+	private IOException failure;
+
+	/**
+	 * Write <engine> to <file> after every <every> timesteps from now on
+	 * @throws IllegalArgumentException if <engine> doesn't keep every timestep's totals, which a checkpoint needs
+	 */
+	public CheckpointWriter(SimulationEngine engine, File file, int every) {
+		if(every < 1)
+			throw new IllegalArgumentException("checkpoints need to be at least 1 timestep apart");
+		if(!engine.keepsAllTotals())
+			throw new IllegalArgumentException("a checkpoint needs every timestep's totals, and the engine only keeps the last few");
+		this.engine = engine;
+		this.file = file;
+		this.every = every;
+		engine.setCheckpointWriter(this);
+	}
+
+	/*
+	 * Called by the engine after every step
+	 */
+	void stepFinished() {
+		//the step has been counted by now, so this is the timestep the checkpoint will carry on from
+		if(failure != null || engine.getCurrentTimestep() % every != 0)
+			return;
+		write();
+	}
+
+	//write one, or give up on them - a run that can't be checkpointed is still worth finishing, so whatever goes wrong
+	//stops the checkpoints rather than the run
+	private void write() {
+		try {
+			Checkpoint.write(engine, file);
+			written++;
+		} catch(IOException e) {
+			failure = e;
+		} catch(RuntimeException e) {
+			failure = new IOException("couldn't write " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Write one more checkpoint now, and stop writing them - the run doesn't have to be finished
+	 * @throws IOException if this or any earlier checkpoint couldn't be written
+	 */
+	public void close() throws IOException {
+		engine.setCheckpointWriter(null);
+		if(failure == null)
+			write();
+		if(failure != null)
+			throw failure;
+	}
+
+	/**
+	 * @return how many checkpoints have been written
+	 */
+	public int getWritten() {
+		return written;
+	}
+
+	/**
+	 * @return why the checkpoints stopped being written, or null if they haven't
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Live counts of how many people are of each type, overall and in each location, kept up to date as people change
+ * type or location rather than recounted every step.  Also counts what happened since the last clearIncidence():
+ * new infections, new recoveries and people losing their immunity, overall and per location.
+ *
+ * The engine keeps one of these with the real counts.  Each tile of a threaded step keeps its own, holding only the
+ * changes its people made, and those get added into the engine's at the end of the step - so no two threads
+ * ever touch the same counters.
+ *
+ */
+public class CompartmentCounters {
+
+	//the kinds of change we count
+	public static final int INFECTION = 0;
+	public static final int RECOVERY = 1;
+	public static final int IMMUNITY_LOST = 2;
+	private static final int NUM_EVENTS = 3;
+
+	//big enough to index by Person type
+	private static final int NUM_TYPES = Math.max(Math.max(Person.SUSCEPTIBLE, Person.INFECTIVE), Person.RECOVERED) + 1;
+
+	private int numLocations;
+
+	//counts[type] and locationCounts[location * NUM_TYPES + type]
+	private long[] counts = new long[NUM_TYPES];
+	private long[] locationCounts;
+
+	//incidence[event] and locationIncidence[location * NUM_EVENTS + event]
+	private long[] incidence = new long[NUM_EVENTS];
+	private long[] locationIncidence;
+
+	public CompartmentCounters(int numLocations) {
+		this.numLocations = numLocations;
+		locationCounts = new long[numLocations * NUM_TYPES];
+		locationIncidence = new long[numLocations * NUM_EVENTS];
+	}
+
+	/**
+	 * Count a new person of type <type> in location <location>
+	 */
+	public void add(int location, int type) {
+		counts[type]++;
+		locationCounts[location * NUM_TYPES + type]++;
+	}
+
+	/**
+	 * Count someone in <location> changing from type <from> to type <to>
+	 */
+	public void changeType(int location, int from, int to) {
+		if(from == to)
+			return;
+		counts[from]--;
+		counts[to]++;
+		locationCounts[location * NUM_TYPES + from]--;
+		locationCounts[location * NUM_TYPES + to]++;
+
+		int event;
+		if(to == Person.INFECTIVE)
+			event = INFECTION;
+		else if(from == Person.INFECTIVE)
+			event = RECOVERY;
+		else
+			event = IMMUNITY_LOST;
+		incidence[event]++;
+		locationIncidence[location * NUM_EVENTS + event]++;
+	}
+
+	/**
+	 * Count someone of type <type> moving from location <from> to location <to>
+	 */
+	public void changeLocation(int type, int from, int to) {
+		if(from == to)
+			return;
+		locationCounts[from * NUM_TYPES + type]--;
+		locationCounts[to * NUM_TYPES + type]++;
+	}
+
+	/**
+	 * Add the changes counted in <changes> - a tile's share of a step - to these, and clear them
+	 */
+	public void addChanges(CompartmentCounters changes) {
+		for(int type = 0; type < NUM_TYPES; type++) {
+			counts[type] += changes.counts[type];
+			changes.counts[type] = 0;
+		}
+		for(int event = 0; event < NUM_EVENTS; event++) {
+			incidence[event] += changes.incidence[event];
+			changes.incidence[event] = 0;
+		}
+		for(int k = 0; k < locationCounts.length; k++) {
+			locationCounts[k] += changes.locationCounts[k];
+			changes.locationCounts[k] = 0;
+		}
+		for(int k = 0; k < locationIncidence.length; k++) {
+			locationIncidence[k] += changes.locationIncidence[k];
+			changes.locationIncidence[k] = 0;
+		}
+	}
+
+	/**
+	 * Start counting incidence from zero again - the engine does this at the start of every step
+	 */
+	public void clearIncidence() {
+		for(int event = 0; event < NUM_EVENTS; event++) {
+			incidence[event] = 0;
+		}
+		for(int k = 0; k < locationIncidence.length; k++) {
+			locationIncidence[k] = 0;
+		}
+	}
+
+	/**
+	 * @return how many people are of type <type> (like Person.INFECTIVE)
+	 */
+	public long getCount(int type) {
+		return counts[type];
+	}
+
+	/**
+	 * @return how many people in <location> are of type <type>
+	 */
+	public long getCount(int location, int type) {
+		return locationCounts[location * NUM_TYPES + type];
+	}
+
+	/**
+	 * @return how many times <event> (like INFECTION) happened since the last clearIncidence()
+	 */
+	public long getIncidence(int event) {
+		return incidence[event];
+	}
+
+	/**
+	 * @return how many times <event> happened in <location> since the last clearIncidence()
+	 */
+	public long getIncidence(int location, int event) {
+		return locationIncidence[location * NUM_EVENTS + event];
+	}
+
+	public int getNumLocations() {
+		return numLocations;
+	}
+}
@@ -0,0 +1,397 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * A quick stand-in for the SimulationEngine that only follows how many people are susceptible, infective and recovered,
+ * not where any of them are.  Everyone is taken to meet everyone else equally often, so each timestep:
+ *
+ *   a susceptible gets sick at rate contactRate * infectives / everyone
+ *   an infective recovers (or, without useSIR, goes back to susceptible) at the rate that gives a chance of beta
+ *   with useSIR and a recoveryTime, a recovered person loses their immunity after about as long as the agents do
+ *
+ * The agents count recoveryTime steps down from the step they recover in, so they're counted as recovered for
+ * recoveryTime - 1 timesteps, always.  A single rate would have most people losing immunity much sooner or later than
+ * that, so immunity is split into up to MAX_IMMUNITY_STAGES stages that recovered people pass through one after another,
+ * each as long as the others on average.  How long people stay immune then has an Erlang distribution with the right
+ * mean, and the more stages, the closer it is to the agents' fixed countdown.
+ *
+ * ModelParameters.solver picks how that's solved:
+ *
+ *   ODE_SOLVER         the mean-field equations, with fourth order Runge-Kutta - no randomness at all
+ *   GILLESPIE_SOLVER   exactly, one change at a time - random, and best for small populations
+ *   TAU_LEAP_SOLVER    in fixed leaps, drawing how many of each change happened during each one - random, and fast for any size
+ *
+ * The totals, incidence and stop reasons come out the same way as the engine's, so RunResult and BatchRunner work on both.
+ * The ODE's counts are rounded to whole people when they're recorded.  The contact rate is ModelParameters.contactRate,
+ * or ContactCalibration's estimate from alpha if that isn't given.
+ *
+ */
+public class CompartmentModel {
+
+	//how finely each timestep is cut up for the ODE, and at least how finely for the tau leaps
+	private static final int ODE_SUBSTEPS = 20;
+	private static final int TAU_LEAP_SUBSTEPS = 4;
+
+	//the most any one person's rate of changing times a leap can be - keeps the leaps short enough to be accurate
+	private static final double MAX_LEAP_RATE = .1;
+
+	//a rate high enough that it's certain to happen within a timestep, for chances of 1
+	private static final double CERTAIN_RATE = 50;
+
+	//the most stages immunity is split into - no stage is shorter than a timestep on average, either
+	private static final int MAX_IMMUNITY_STAGES = 16;
+
+	//the changes that can happen: getting sick, recovering, and moving on from each immunity stage in turn.
+	//Moving on from the last one is losing immunity
+	private static final int INFECTION = 0;
+	private static final int RECOVERY = 1;
+	private static final int FIRST_STAGE = 2;
+
+	//where the counts are in a state - then each immunity stage's, from FIRST_STAGE on
+	private static final int S = 0;
+	private static final int I = 1;
+
+	//past this many expected changes, a binomial draw uses the normal approximation
+	private static final double NORMAL_APPROXIMATION_MEAN = 30;
+
+	private ModelParameters params;
+	private double population;
+	private double contactRate;
+	private double recoveryRate;
+	private int immunityStages;
+	private double stageRate;
+	private int leapsPerTimestep;
+
+	//how many people are susceptible, infective and in each immunity stage right now - whole numbers, except with the ODE
+	private double[] state;
+
+	//what happened so far this timestep
+	private double newInfections;
+	private double newRecoveries;
+	private double newImmunityLost;
+
+	//the ODE's flows at each stage of a Runge-Kutta substep, the state they're taken at, and how many of each change
+	//happen over a substep or a leap, reused
+	private double[][] slopes;
+	private double[] along;
+	private double[] flow;
+
+	private int[][] totals;
+	private int[][] incidence;
+	private StreamRandom numGen;
+
+	private int totalNumTimesteps;
+	private int curTimestep = 0;
+	private String stopReason;
+
+	/**
+	 * Set up a run of <params>, which must have a compartment solver
+	 */
+	public CompartmentModel(ModelParameters params) {
+		if(params.solver == ModelParameters.AGENT_SOLVER)
+			throw new IllegalArgumentException("The agent solver needs a SimulationEngine");
+		this.params = params;
+		population = params.initTotalPeople;
+		contactRate = params.contactRate > 0 ? params.contactRate : ContactCalibration.estimate(params);
+		recoveryRate = rate(params.beta);
+		if(params.useSIR) {
+			//without a recoveryTime, immunity never runs out.  With a recoveryTime of 1, it runs out the step it starts
+			int immuneTime = params.recoveryDelay - 1;
+			immunityStages = Math.max(1, Math.min(MAX_IMMUNITY_STAGES, immuneTime));
+			if(params.recoveryDelay == 0)
+				stageRate = 0;
+			else
+				stageRate = immuneTime > 0 ? (double) immunityStages / immuneTime : CERTAIN_RATE;
+		}
+		state = new double[FIRST_STAGE + immunityStages];
+		state[I] = params.initNumInfectives;
+		state[S] = population - state[I];
+		slopes = new double[4][state.length];
+		along = new double[state.length];
+		flow = new double[state.length];
+		//nobody's rate of getting sick can be more than the contact rate, however many infectives there are
+		double fastest = Math.max(contactRate, Math.max(recoveryRate, stageRate));
+		leapsPerTimestep = Math.max(TAU_LEAP_SUBSTEPS, (int) Math.ceil(fastest / MAX_LEAP_RATE));
+
+		totalNumTimesteps = params.numTimesteps;
+		int maxTypeValue = Math.max(Math.max(Person.SUSCEPTIBLE, Person.INFECTIVE), Person.RECOVERED);
+		totals = new int[maxTypeValue+1][totalNumTimesteps+1];
+		incidence = new int[3][totalNumTimesteps+1];
+		numGen = new RandomStreams(params.seed).newGenerator();
+		checkStopConditions();
+	}
+
+	/**
+	 * @return the rate per timestep of something that has chance <chance> of happening within a timestep
+	 */
+	public static double rate(double chance) {
+		if(chance >= 1)
+			return CERTAIN_RATE;
+		return -Math.log(1 - chance);
+	}
+
+	public boolean isFinished() {
+		return stopReason != null;
+	}
+
+	/**
+	 * Run the next <n> timesteps, or until the run is finished
+	 */
+	public void run(int n) {
+		for(int i = 0; i < n && !isFinished(); i++) {
+			step();
+		}
+	}
+
+	/**
+	 * Run one timestep: record the totals, then solve up to the next timestep
+	 */
+	public void step() {
+		if(isFinished()) return;
+
+		totals[Person.SUSCEPTIBLE][curTimestep] = getCount(Person.SUSCEPTIBLE);
+		totals[Person.INFECTIVE][curTimestep] = getCount(Person.INFECTIVE);
+		totals[Person.RECOVERED][curTimestep] = getCount(Person.RECOVERED);
+		newInfections = 0;
+		newRecoveries = 0;
+		newImmunityLost = 0;
+
+		numGen.select(curTimestep, RandomStreams.PHASE_COMPARTMENT, 0);
+		if(params.solver == ModelParameters.ODE_SOLVER)
+			odeStep();
+		else if(params.solver == ModelParameters.GILLESPIE_SOLVER)
+			gillespieStep();
+		else
+			tauLeapStep();
+
+		incidence[CompartmentCounters.INFECTION][curTimestep] = (int) Math.round(newInfections);
+		incidence[CompartmentCounters.RECOVERY][curTimestep] = (int) Math.round(newRecoveries);
+		incidence[CompartmentCounters.IMMUNITY_LOST][curTimestep] = (int) Math.round(newImmunityLost);
+
+		curTimestep++;
+		checkStopConditions();
+	}
+
+	//the rate each susceptible gets sick at, with <infectives> infectives around
+	private double infectionRate(double infectives) {
+		return population > 0 ? contactRate * infectives / population : 0;
+	}
+
+	//how many recovered people there are in <state>, over all the immunity stages
+	private double recovered(double[] state) {
+		double recovered = 0;
+		for(int k = FIRST_STAGE; k < state.length; k++) {
+			recovered += state[k];
+		}
+		return recovered;
+	}
+
+	//<amount> of change <change> happens to the counts in <state>
+	private void shift(double[] state, int change, double amount) {
+		state[change == INFECTION ? S : change == RECOVERY ? I : change] -= amount;
+		if(change == INFECTION)
+			state[I] += amount;
+		else if(change == RECOVERY)
+			state[params.useSIR ? FIRST_STAGE : S] += amount;
+		else
+			state[change + 1 < state.length ? change + 1 : S] += amount;
+	}
+
+	//<amount> of change <change> happens to the people in the run
+	private void change(int change, double amount) {
+		shift(state, change, amount);
+		if(change == INFECTION)
+			newInfections += amount;
+		else if(change == RECOVERY)
+			newRecoveries += amount;
+		else if(change == state.length - 1)
+			newImmunityLost += amount;
+	}
+
+	//the rate of each kind of change, from the counts in <state>, into <flows>
+	private void flows(double[] state, double[] flows) {
+		flows[INFECTION] = infectionRate(state[I]) * state[S];
+		flows[RECOVERY] = recoveryRate * state[I];
+		for(int k = FIRST_STAGE; k < state.length; k++) {
+			flows[k] = stageRate * state[k];
+		}
+	}
+
+	/*
+	 * One timestep of the mean-field equations.  The counts only ever change by the flows, so stepping the flows with
+	 * Runge-Kutta steps the counts the same way, and gives the incidence too
+	 */
+	private void odeStep() {
+		double h = 1.0 / ODE_SUBSTEPS;
+		for(int k = 0; k < ODE_SUBSTEPS; k++) {
+			flows(state, slopes[0]);
+			for(int stage = 1; stage < 4; stage++) {
+				double[] previous = slopes[stage - 1];
+				double distance = stage == 3 ? h : h / 2;
+				System.arraycopy(state, 0, along, 0, state.length);
+				for(int change = 0; change < flow.length; change++) {
+					shift(along, change, distance * previous[change]);
+				}
+				flows(along, slopes[stage]);
+			}
+			for(int change = 0; change < flow.length; change++) {
+				flow[change] = h / 6 * (slopes[0][change] + 2 * slopes[1][change] + 2 * slopes[2][change] + slopes[3][change]);
+			}
+			for(int change = 0; change < flow.length; change++) {
+				change(change, flow[change]);
+			}
+		}
+	}
+
+	/*
+	 * One timestep of Gillespie's direct method: wait for the next change, pick which one, repeat.
+	 * Waiting times don't remember anything, so the wait that runs past the end of the timestep can just be dropped
+	 */
+	private void gillespieStep() {
+		double time = 0;
+		while(true) {
+			flows(state, flow);
+			double total = 0;
+			for(int change = 0; change < flow.length; change++) {
+				total += flow[change];
+			}
+			if(total <= 0)
+				return;
+			time += -Math.log(1 - numGen.nextDouble()) / total;
+			if(time >= 1)
+				return;
+			double pick = numGen.nextDouble() * total;
+			int change = 0;
+			while(change < flow.length - 1 && pick >= flow[change]) {
+				pick -= flow[change];
+				change++;
+			}
+			change(change, 1);
+		}
+	}
+
+	/*
+	 * One timestep of tau leaps.  How many of each change happen during a leap is a binomial draw, using the counts at
+	 * the start of the leap, so nobody can change twice and no count can go below 0
+	 */
+	private void tauLeapStep() {
+		double tau = 1.0 / leapsPerTimestep;
+		for(int k = 0; k < leapsPerTimestep; k++) {
+			flow[INFECTION] = binomial((long) state[S], 1 - Math.exp(-infectionRate(state[I]) * tau));
+			flow[RECOVERY] = binomial((long) state[I], 1 - Math.exp(-recoveryRate * tau));
+			for(int stage = FIRST_STAGE; stage < flow.length; stage++) {
+				flow[stage] = binomial((long) state[stage], 1 - Math.exp(-stageRate * tau));
+			}
+			for(int change = 0; change < flow.length; change++) {
+				change(change, flow[change]);
+			}
+		}
+	}
+
+	//how many of <n> things happen, if each happens with chance <chance>
+	private long binomial(long n, double chance) {
+		if(n <= 0 || chance <= 0)
+			return 0;
+		if(chance >= 1)
+			return n;
+		if(chance > .5)
+			return n - binomial(n, 1 - chance);
+
+		double mean = n * chance;
+		if(mean < NORMAL_APPROXIMATION_MEAN) {
+			//skip ahead by the geometric gaps between the things that happen, until we run past n
+			double logMiss = Math.log(1 - chance);
+			long count = 0;
+			long position = 0;
+			while(true) {
+				position += (long) (Math.log(1 - numGen.nextDouble()) / logMiss) + 1;
+				if(position > n)
+					return count;
+				count++;
+			}
+		}
+		long draw = Math.round(mean + Math.sqrt(mean * (1 - chance)) * numGen.nextGaussian());
+		return Math.max(0, Math.min(n, draw));
+	}
+
+	//see if the run is over, and why - the same conditions ModelParameters asks the engine for
+	private void checkStopConditions() {
+		if(curTimestep >= totalNumTimesteps)
+			stopReason = StopConditions.ALL_TIMESTEPS;
+		else if(params.stopWhenNoInfectives && getCount(Person.INFECTIVE) == 0)
+			stopReason = StopConditions.NO_INFECTIVES;
+		else if(params.steadyStateWindow > 0 && isSteady(params.steadyStateWindow, params.steadyStateTolerance * population))
+			stopReason = StopConditions.STEADY_STATE;
+	}
+
+	//have the counts each stayed within <allowed> of each other for the last <window> timesteps?
+	private boolean isSteady(int window, double allowed) {
+		if(curTimestep < window)
+			return false;
+		double[] now = {state[S], state[I], recovered(state)};
+		int[] types = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+		for(int k = 0; k < types.length; k++) {
+			double min = now[k];
+			double max = now[k];
+			for(int t = curTimestep - window; t < curTimestep; t++) {
+				min = Math.min(min, totals[types[k]][t]);
+				max = Math.max(max, totals[types[k]][t]);
+			}
+			if(max - min > allowed)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return why the run stopped, like StopConditions.NO_INFECTIVES, or null if it hasn't
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * @return how many people are of type <type> right now, rounded to a whole person
+	 */
+	public int getCount(int type) {
+		if(type == Person.SUSCEPTIBLE)
+			return (int) Math.round(state[S]);
+		if(type == Person.INFECTIVE)
+			return (int) Math.round(state[I]);
+		return (int) Math.round(recovered(state));
+	}
+
+	/**
+	 * @return the contact rate this run used
+	 */
+	public double getContactRate() {
+		return contactRate;
+	}
+
+	/**
+	 * @return the totals array, like SimulationEngine.getTotals()
+	 */
+	public int[][] getTotals() {
+		return totals;
+	}
+
+	/**
+	 * @return the incidence array, like SimulationEngine.getIncidence()
+	 */
+	public int[][] getIncidence() {
+		return incidence;
+	}
+
+	public ModelParameters getParameters() {
+		return params;
+	}
+
+	/**
+	 * @return the timestep that will be run next
+	 */
+	public int getCurrentTimestep() {
+		return curTimestep;
+	}
+
+	public int getTotalNumTimesteps() {
+		return totalNumTimesteps;
+	}
+}
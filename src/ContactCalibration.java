@@ -0,0 +1,223 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Turns the agent model's alpha - the chance a collision with an infective makes someone sick - into the contact rate
+ * a CompartmentModel needs: how many people one infective would infect per timestep, if everyone else were susceptible.
+ *
+ * estimate() works it out from how crowded the arena is, taking people to be spread evenly and to move at random.
+ * fit() measures it from finished agent runs instead, so it also takes in whatever the estimate can't,
+ * like people avoiding infectives or clumping up in locations.  It picks the rate whose ODE infective curve is closest
+ * to the agents' over the whole run, by least squares, and residual() says how close that is.  Everyone meeting everyone
+ * can't grow as fast early on and then last as long as people who only meet their neighbours, so no one rate fits both
+ * ends exactly - the residual is how far off the ODE still is on a typical timestep.  Running this from the command line
+ * does both:
+ *
+ *   java ContactCalibration params.properties 4 avoidInfectives=true
+ *
+ * runs the agent model 4 times (1 if not given), and prints the estimate and the fitted rate with their residuals, and
+ * how the peak of the agent runs compares with the ODE's using each.  Put the fitted rate in the parameter file as
+ * contactRate= to use it.
+ *
+ */
+public class ContactCalibration {
+
+	//the fit looks this many times either side of the estimate first, at this many rates spread evenly on a log scale
+	private static final double SEARCH_RANGE = 100;
+	private static final int SEARCH_POINTS = 41;
+
+	//then narrows in until the best rate is known to this fraction of itself
+	private static final double FIT_TOLERANCE = 1e-4;
+
+	private ContactCalibration() {
+	}
+
+	/**
+	 * @return the contact rate for <params>, from how many people are close enough to collide with someone on average
+	 */
+	public static double estimate(ModelParameters params) {
+		//people collide when they're closer than this on both axes, and can be anywhere in this much of the world -
+		//all of it on a torus, or everywhere their top left corner fits between walls
+		int reachX = SimulationEngine.COLLISION_RADIUS * Person.WIDTH;
+		int reachY = SimulationEngine.COLLISION_RADIUS * Person.HEIGHT;
+		double collisionArea = (2.0 * reachX - 1) * (2.0 * reachY - 1);
+		double arenaArea = params.boundary == ModelParameters.TORUS ? (double) params.worldWidth * params.worldHeight
+				: (double) (params.worldWidth - Person.WIDTH) * (params.worldHeight - Person.HEIGHT);
+		double othersColliding = Math.max(0, params.initTotalPeople - 1) * Math.min(1, collisionArea / arenaArea);
+
+		//each collision with an infective gets two chances to infect, one from each side
+		double infectChance = 1 - (1 - params.alpha) * (1 - params.alpha);
+		return CompartmentModel.rate(infectChance) * othersColliding;
+	}
+
+	/**
+	 * @return the contact rate whose ODE run of <params> has infective counts closest to <infectives> - how many people
+	 * were infective at the start of each timestep of agent runs of <params> - by least squares over every timestep
+	 */
+	public static double fit(ModelParameters params, double[] infectives) {
+		//look over a wide range first, since the squared error can be flat far from the best rate
+		double center = estimate(params);
+		if(center <= 0)
+			center = 1;
+		double logLow = Math.log(center / SEARCH_RANGE);
+		double logStep = 2 * Math.log(SEARCH_RANGE) / (SEARCH_POINTS - 1);
+		int best = 0;
+		double bestError = Double.MAX_VALUE;
+		for(int k = 0; k < SEARCH_POINTS; k++) {
+			double error = squaredError(params, Math.exp(logLow + k * logStep), infectives);
+			if(error < bestError) {
+				best = k;
+				bestError = error;
+			}
+		}
+
+		//then narrow in between the rates either side of the best one, by golden section search on the log of the rate
+		double ratio = (Math.sqrt(5) - 1) / 2;
+		double low = logLow + Math.max(0, best - 1) * logStep;
+		double high = logLow + Math.min(SEARCH_POINTS - 1, best + 1) * logStep;
+		double left = high - ratio * (high - low);
+		double right = low + ratio * (high - low);
+		double leftError = squaredError(params, Math.exp(left), infectives);
+		double rightError = squaredError(params, Math.exp(right), infectives);
+		while(high - low > FIT_TOLERANCE) {
+			if(leftError <= rightError) {
+				high = right;
+				right = left;
+				rightError = leftError;
+				left = high - ratio * (high - low);
+				leftError = squaredError(params, Math.exp(left), infectives);
+			} else {
+				low = left;
+				left = right;
+				leftError = rightError;
+				right = low + ratio * (high - low);
+				rightError = squaredError(params, Math.exp(right), infectives);
+			}
+		}
+		return Math.exp((low + high) / 2);
+	}
+
+	/**
+	 * @return the contact rate that best explains <engine>'s run so far
+	 */
+	public static double fit(SimulationEngine engine) {
+		return fit(engine.getParameters(), infectives(engine));
+	}
+
+	/**
+	 * @return how far the ODE's infective counts are from <infectives> with <contactRate>, as the root mean square
+	 * over every timestep - in people
+	 */
+	public static double residual(ModelParameters params, double contactRate, double[] infectives) {
+		return infectives.length > 0 ? Math.sqrt(squaredError(params, contactRate, infectives) / infectives.length) : 0;
+	}
+
+	/**
+	 * @return how many people were infective at the start of each timestep of <engine>'s run so far
+	 */
+	public static double[] infectives(SimulationEngine engine) {
+		int[] totals = engine.getTotals()[Person.INFECTIVE];
+		double[] infectives = new double[engine.getCurrentTimestep()];
+		for(int t = 0; t < infectives.length; t++) {
+			infectives[t] = totals[t];
+		}
+		return infectives;
+	}
+
+	//the sum of the squared differences between <infectives> and the ODE's infective counts with <contactRate>
+	private static double squaredError(ModelParameters params, double contactRate, double[] infectives) {
+		ModelParameters odeParams = odeParameters(params, contactRate, infectives.length);
+		CompartmentModel ode = new CompartmentModel(odeParams);
+		ode.run(odeParams.numTimesteps);
+		int[] odeInfectives = ode.getTotals()[Person.INFECTIVE];
+		double error = 0;
+		for(int t = 0; t < infectives.length; t++) {
+			double difference = odeInfectives[t] - infectives[t];
+			error += difference * difference;
+		}
+		return error;
+	}
+
+	//<params> for an ODE run of <numTimesteps> timesteps with <contactRate>, that doesn't stop early
+	private static ModelParameters odeParameters(ModelParameters params, double contactRate, int numTimesteps) {
+		ModelParameters odeParams = params.copy();
+		odeParams.solver = ModelParameters.ODE_SOLVER;
+		odeParams.contactRate = contactRate;
+		odeParams.numTimesteps = numTimesteps;
+		odeParams.stopWhenNoInfectives = false;
+		odeParams.steadyStateWindow = 0;
+		return odeParams;
+	}
+
+	private static void usage() {
+		System.err.println("usage: java ContactCalibration <parameter file> [<runs>] [key=value ...]");
+		System.exit(1);
+	}
+
+	/**
+	 * @param args the parameter file, then optionally how many agent runs to fit to, then any overrides
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1)
+			usage();
+
+		Properties properties = ParameterFile.load(new File(args[0]));
+		int runs = 1;
+		ModelParameters params = null;
+		try {
+			for(int i = 1; i < args.length; i++) {
+				if(args[i].indexOf('=') >= 0)
+					ParameterFile.override(properties, args[i]);
+				else
+					runs = Integer.parseInt(args[i]);
+			}
+			params = ParameterFile.fromProperties(properties);
+		} catch(NumberFormatException e) {
+			usage();
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		params.solver = ModelParameters.AGENT_SOLVER;
+
+		//every run goes the whole way, so their infective counts can be averaged timestep by timestep
+		params.stopWhenNoInfectives = false;
+		params.steadyStateWindow = 0;
+
+		//fit to the mean of the runs, and keep their peaks to compare with
+		double[] infectives = new double[params.numTimesteps];
+		double agentPeak = 0;
+		double agentPeakTime = 0;
+		for(int run = 0; run < runs; run++) {
+			ModelParameters runParams = params.copy();
+			runParams.seed = new RandomStreams(params.seed).replicateSeed(run);
+			SimulationEngine engine = new SimulationEngine(runParams);
+			engine.run(runParams.numTimesteps);
+			engine.shutdown();
+			double[] runInfectives = infectives(engine);
+			for(int t = 0; t < infectives.length; t++) {
+				infectives[t] += runInfectives[t] / runs;
+			}
+			RunResult result = new RunResult(engine, 0);
+			agentPeak += (double) result.getPeakInfectives() / runs;
+			agentPeakTime += (double) result.getPeakTime() / runs;
+		}
+
+		double estimated = estimate(params);
+		double fitted = fit(params, infectives);
+		System.out.println("estimated contact rate " + estimated + " (off by " + residual(params, estimated, infectives) + " infectives a timestep)");
+		System.out.println("fitted contact rate    " + fitted + " (off by " + residual(params, fitted, infectives) + " infectives a timestep)");
+		System.out.println("agents:               peak infectives " + agentPeak + " at timestep " + agentPeakTime);
+		for(double rate : new double[] {estimated, fitted}) {
+			ModelParameters odeParams = odeParameters(params, rate, params.numTimesteps);
+			CompartmentModel ode = new CompartmentModel(odeParams);
+			ode.run(odeParams.numTimesteps);
+			RunResult result = new RunResult(ode, 0);
+			System.out.println("ode with " + (rate == estimated ? "estimate: " : "fit:      ") + " peak infectives "
+					+ result.getPeakInfectives() + " at timestep " + result.getPeakTime());
+		}
+		System.out.println("contactRate=" + fitted);
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * A counter-based random number generator.
+ * Every number is a hash of the seed, a key picked with select() and how many numbers have been drawn since,
+ * so the numbers for one person in one phase of one step are the same no matter which thread draws them or when.
+ * One of these can be reused for everyone - just select() the next key first.
+ * The longs and doubles after select() are exactly the ones a java.util.SplittableRandom seeded with the key would give,
+ * without making a new object for every person.
+ *
+ */
+public class CounterRandom extends StreamRandom {
+	private static final long serialVersionUID = 1L;
+
+	//odd constants from SplitMix64, used to spread the key bits around
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long masterSeed;
+	private long key;
+	private long counter;
+
+	public CounterRandom(long masterSeed) {
+		super(masterSeed);
+		this.masterSeed = masterSeed;
+		select(0, 0, 0);
+	}
+
+	public void select(long step, int phase, long id) {
+		key = mix(mix(mix(masterSeed + GOLDEN_GAMMA * (step + 1)) + phase) + id);
+		counter = 0;
+	}
+
+	public void select(long step, int phase, long id, long other) {
+		select(step, phase, id);
+		key = mix(key + other);
+	}
+
+	//the finalizer from SplitMix64 - a good 64 bit hash
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public long nextLong() {
+		counter++;
+		return mix(key + GOLDEN_GAMMA * counter);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int)(nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
@@ -1,20 +1,18 @@
-import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
-import java.util.Collections;
-import java.util.List;
-import java.util.Random;
-import java.util.Vector;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -31,48 +29,38 @@ public class DiseaseModel extends JFrame implements ChangeListener, WindowListen
 	Graphics g;
 
 	//the variables and constants to set up the timestep delay slider
-	private int timestepDelay;
 	private static final int INIT_DELAY = 500;
 	private static final int MIN_DELAY = 0;
 	private static final int MAX_DELAY = 2000;
 	private static JSlider delaySlider;
 
-	//store all the people
-	private Vector<Person> people;
-
-	//store all the totals of different types of people, for each timestep by type
-	private int[][] totals;
+	//the simulation being shown
+	private SimulationEngine engine;
 
 	//the total size of the window
 	private static final int FRAME_HEIGHT = 550;
 	private static final int FRAME_WIDTH = 1100;
 
-	//the screen shows all of the People moving
-	private static final Rectangle SCREEN = new Rectangle(5, 25, FRAME_WIDTH/2 -50, FRAME_HEIGHT - 35);
-
-	//When you have several locations, store the bounding Rectangles for those locations
-	private Rectangle[][] locations;
-	private static final int LOCATION_BUFFER_WIDTH = 5*Person.WIDTH;
+	//the screen shows all of the People moving - the whole world, scaled to fit if it is not this size
+	private static final Rectangle SCREEN = new Rectangle(SimulationEngine.ARENA_X, SimulationEngine.ARENA_Y, SimulationEngine.ARENA_WIDTH, SimulationEngine.ARENA_HEIGHT);
 
 	//the graph display area
 	private static final Rectangle GRAPH_BOUNDING_RECT = new Rectangle(FRAME_WIDTH - (int)SCREEN.getWidth(), 25, FRAME_WIDTH/2-60, FRAME_HEIGHT - 35);
 
-	//Disease variables
-	public static double alpha;
-	public static double beta;
-	public static boolean useSIR;
-	public static int recoveryDelay;
-	private boolean moveAwayFromInfectives;
-	private boolean useLocations;
-	private double changeLocationProb;
-	private Random numGen;
+	//controls when steps happen - pausing, stopping and the delay between steps
+	private StepScheduler scheduler;
 
-	private int totalNumTimesteps;
-	private int curTimestep = 0;
+	//draws the people from snapshots the simulation thread hands it, at no more than this many frames a second,
+	//so a fast run doesn't wait on the screen.  The timer repaints whenever there's a new snapshot
+	private static final int MAX_FRAMES_PER_SECOND = 30;
+	private PopulationRenderer renderer;
+	private Timer frameTimer;
 
-	//control model activity methods
-	private boolean pauseModel;
-	private boolean stopModel;
+	//the graph, which keeps what it's drawn and only adds the new timesteps
+	private TotalsChart chart;
+
+	//array of Colors, corresponding to the various states - make sure it is the size of the highest int + 1
+	public static final Color[] diseaseStateColors = {Color.WHITE, Color.GRAY, Color.GREEN, Color.BLUE};
 
 	//set the background color for the frame
 	public static final Color backgroundColor = Color.WHITE;
@@ -85,11 +73,8 @@ public class DiseaseModel extends JFrame implements ChangeListener, WindowListen
 		super("Disease Model");
 
 		//check passed values - if not OK FREAK OUT!!!
-		if(alpha > 1.0 || alpha < 0.0
-				|| beta > 1.0 || beta < 0.0 
-				|| recoveryDelay < 0
-				|| initTotalPeople < 0
-				|| initNumInfectives < 0 || initNumInfectives > initTotalPeople) {
+		ModelParameters params = new ModelParameters(alpha, beta, useSIR, recoveryDelay, initTotalPeople, initNumInfectives, numTimesteps, moveAwayFromInfectives, _useLocations, allInfectivesInSameLoc, numLocationCols, numLocationRows, _changeLocationProb);
+		if(!params.isValid()) {
 			System.out.println("INVALID ARGUMENTS");
 			System.exit(0);
 		}
@@ -102,7 +87,7 @@ public class DiseaseModel extends JFrame implements ChangeListener, WindowListen
 		setBackground(Color.WHITE);
 
 		//setting up the delay and slider to control it, and put it into the Frame
-		timestepDelay = INIT_DELAY;
+		scheduler = new StepScheduler(INIT_DELAY);
 		delaySlider = new JSlider(JSlider.VERTICAL, MIN_DELAY, MAX_DELAY, INIT_DELAY);
 		Font sliderFont = new Font("Serif", Font.ITALIC, 15);
 		delaySlider.setFont(sliderFont);
@@ -128,263 +113,89 @@ public class DiseaseModel extends JFrame implements ChangeListener, WindowListen
 		add(leftPane, BorderLayout.WEST);
 		add(rightPanel, BorderLayout.EAST);
 
-		//if we're using locations, set them up
-		if(_useLocations) {
-			locations = new Rectangle[numLocationCols][numLocationRows];
-			//calculate the size of each rectangle
-			int locationWidth = (int)(SCREEN.getWidth() - LOCATION_BUFFER_WIDTH) / numLocationCols;
-			int locationHeight = (int)(SCREEN.getHeight() - LOCATION_BUFFER_WIDTH) / numLocationRows;
-
-			for(int c = 0; c < numLocationCols; c++) {
-				for(int r = 0; r < numLocationRows; r++) {
-					int x = (int)(c * (locationWidth + LOCATION_BUFFER_WIDTH) + SCREEN.getX());
-					int y = (int)(r * (locationHeight + LOCATION_BUFFER_WIDTH) + SCREEN.getY());
-					locations[c][r] = new Rectangle(x, y, locationWidth, locationHeight);
-				}
-			}
-		}
-
-		//make all the people and place them
-		people = new Vector<Person>(initTotalPeople);
-		numGen = new Random();
-		int i = 0;
-		//add the specified number of infectives
-		for(; i < initNumInfectives; i++) {
-			int newPersonX;
-			int newPersonY;
-			Rectangle newPersonLoc;
-			if(_useLocations) {
-				//if infectives start in the same location, put them all in 0,0
-				if(allInfectivesInSameLoc) {
-					newPersonLoc = locations[0][0];
-				} else {
-					//randomly determine which row and col they are in
-					int newPersonCol = numGen.nextInt(numLocationCols);
-					int newPersonRow = numGen.nextInt(numLocationRows);
-					newPersonLoc = locations[newPersonCol][newPersonRow];
-				}
-				//and place them into that location, again randomly
-				newPersonX = numGen.nextInt((int)newPersonLoc.getWidth() - Person.WIDTH) + (int) newPersonLoc.getX();
-				newPersonY = numGen.nextInt((int)newPersonLoc.getHeight() - Person.HEIGHT) + (int) newPersonLoc.getY();
-			} else {
-				//randomly place them in the SCREEN
-				newPersonX = numGen.nextInt((int)SCREEN.getWidth() - Person.WIDTH) + (int)SCREEN.getX();
-				newPersonY = numGen.nextInt((int)SCREEN.getHeight() - Person.HEIGHT) + (int)SCREEN.getY();
-				newPersonLoc = SCREEN;
-			}
-			people.add(new Person(newPersonX, newPersonY, Person.INFECTIVE, newPersonLoc));
-		}
-		//add the specified number of suseptibles
-		for(; i < initTotalPeople; i++) {
-			int newPersonX;
-			int newPersonY;
-			Rectangle newPersonLoc;
-			if(_useLocations) {
-				//if all the infectives start in the same locatation, do not put people in location 0,0
-				int newPersonCol = 0;
-				int newPersonRow = 0;
-				if(allInfectivesInSameLoc) {
-					while(newPersonCol == 0 && newPersonRow == 0) {
-						newPersonCol = numGen.nextInt(numLocationCols);
-						newPersonRow = numGen.nextInt(numLocationRows);
-					}
-				} else {
-					//randomly determine which row and col they are in
-					newPersonCol = numGen.nextInt(numLocationCols);
-					newPersonRow = numGen.nextInt(numLocationRows);
-				}
-				newPersonLoc = locations[newPersonCol][newPersonRow];
-				//and place them into that location, again randomly
-				newPersonX = numGen.nextInt((int)newPersonLoc.getWidth() - Person.WIDTH) + (int) newPersonLoc.getX();
-				newPersonY = numGen.nextInt((int)newPersonLoc.getHeight() - Person.HEIGHT) + (int) newPersonLoc.getY();
-			} else {
-				//randomly place them in the SCREEN
-				newPersonX = numGen.nextInt((int)SCREEN.getWidth() - Person.WIDTH) + (int)SCREEN.getX();
-				newPersonY = numGen.nextInt((int)SCREEN.getHeight() - Person.HEIGHT) + (int)SCREEN.getY();
-				newPersonLoc = SCREEN;
+		//set up the simulation itself
+		engine = new SimulationEngine(params);
+
+		//show where everyone starts, then keep showing the newest snapshot
+		renderer = new PopulationRenderer(SCREEN.x, SCREEN.y, SCREEN.width, SCREEN.height, diseaseStateColors, backgroundColor, MAX_FRAMES_PER_SECOND);
+		LocationGrid world = engine.getLocations();
+		renderer.setViewport(world.getAreaX(), world.getAreaY(), world.getAreaWidth(), world.getAreaHeight());
+		renderer.publish(engine);
+		chart = new TotalsChart(GRAPH_BOUNDING_RECT, engine.getTotalNumTimesteps(), engine.getPopulation().size(), diseaseStateColors, backgroundColor);
+		frameTimer = new Timer(1000 / MAX_FRAMES_PER_SECOND, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if(renderer.hasNewFrame())
+					repaint();
 			}
-			people.add(new Person(newPersonX, newPersonY, Person.SUSCEPTIBLE, newPersonLoc));
-		}
-
-		//store the number of timesteps
-		this.totalNumTimesteps = numTimesteps;
-
-		//get the max type integer value to set up the total counter array
-		int maxTypeValue = Math.max(Math.max(Person.SUSCEPTIBLE, Person.INFECTIVE), Person.RECOVERED);
-
-		//keep track of how many individuals we have at each timestep
-		totals = new int[maxTypeValue+1][totalNumTimesteps+1];
-
-		//set static disease variables
-		DiseaseModel.alpha = alpha;
-		DiseaseModel.beta = beta;
-		DiseaseModel.useSIR = useSIR;
-		DiseaseModel.recoveryDelay = recoveryDelay;
-		this.moveAwayFromInfectives = moveAwayFromInfectives;
-		this.useLocations = _useLocations;
-		this.changeLocationProb = _changeLocationProb;
+		});
+		frameTimer.start();
 	}
 
-	/* ASSUMES <people> VECTOR IS SORTED
-	 * Binary searches for the person farthest to the left within the <radius>
-	 * and farthest to the right within the radius, and returns a sub list of all the people in between 
+	/**
+	 * Allow the Model Setup to pause the model
 	 */
-	private List<Person> lookNearby(Person p, int radius) {
-		//dummy people on both sides of <p>
-		Person dummyLeft = new Person((int)(p.getX()-radius*p.getWidth()), 0, Person.SUSCEPTIBLE, SCREEN);
-		Person dummyRight = new Person((int)(p.getX()+p.getWidth()*(1+radius)), 0, Person.SUSCEPTIBLE, SCREEN);
-
-		//binary search of the indicies where those people should be
-		int leftIndex =  Collections.binarySearch(people, dummyLeft);
-		int rightIndex = Collections.binarySearch(people, dummyRight);
-
-		//		System.out.println("p's location = " + p.getX() + ", " + p.getY());
-		//		System.out.println("leftIndex = " + leftIndex + " right index = " + rightIndex);
-
-		//fix the indexes if need be
-		if(leftIndex < 0) leftIndex = -1*(leftIndex + 1);
-		if(rightIndex < 0) rightIndex = -1*(rightIndex +1);
-		if(rightIndex == people.size()) rightIndex = people.size() - 1;
-
-		//return the sub list
-		return people.subList(leftIndex, rightIndex);
+	public void cyclePauseModel() {
+		scheduler.cyclePause();
 	}
 
 	/**
-	 * Allow the Model Setup to pause the model
+	 * Run <n> more steps, then pause
 	 */
-	public void cyclePauseModel() {
-		pauseModel = !pauseModel;
+	public void stepModel(int n) {
+		scheduler.runSteps(n);
 	}
 
-	
 	/**
 	 * See if the model is paused
 	 */
 	public boolean isPaused() {
-		return pauseModel;
+		return scheduler.isPaused();
 	}
 
 	/**
-	 * Stop the model at the next cycle
+	 * Stop the model at the next cycle, and stop checking for frames to show - after one last look
 	 */
 	public void stopModel() {
-		stopModel = true;
+		scheduler.stop();
+		frameTimer.stop();
+		repaint();
 	}
 
 	/**
-	 * Run the model
-	 * Go through the required timesteps, moving everyone and checking for collisions
+	 * Stop the model and the frame timer too, so a restarted model doesn't leave this window's timer running
 	 */
-	public void runModel() {
-		//sort everyone
-		Collections.sort(people);
-
-		//make sure when we start we don't immidiately pause or worse, stop
-		pauseModel = false;
-		stopModel = false;
-
-		//get the current time for the delay
-		long t = System.currentTimeMillis();
-		//go through all of the timesteps
-		for(curTimestep = 0; curTimestep < totalNumTimesteps && !stopModel; curTimestep++) {
-			//count up how many of each type of people there is at the start of the timestep, 
-			//and store the value in the <totals> array in the correct spot
-			int numSusceptibles = 0, numInfectives = 0, numRecovered = 0;
-			for(Person p : people) {
-				if(p.getType() == Person.SUSCEPTIBLE) numSusceptibles++;
-				if(p.getType() == Person.INFECTIVE) numInfectives++;
-				if(p.getType() == Person.RECOVERED) numRecovered++;
-			}
-			totals[Person.SUSCEPTIBLE][curTimestep] = numSusceptibles;
-			totals[Person.INFECTIVE][curTimestep] = numInfectives;
-			totals[Person.RECOVERED][curTimestep] = numRecovered;
-
-
-			//VERY BAD WAY TO PAUSE
-			//but we're doing it anyway
-			while(pauseModel) {}
-
-			//make sure we have waited enough
-			while(System.currentTimeMillis() - t < timestepDelay) {}
-			t = System.currentTimeMillis();
-
-			//change people's locations if needbe
-			if(useLocations) {
-				for(int i = 0; i < people.size(); i++) {
-					if(numGen.nextDouble() < changeLocationProb) {
-						int newLocCol = numGen.nextInt(locations.length);
-						int newLocRow = numGen.nextInt(locations[0].length);
-						people.get(i).setBoundingLocation(locations[newLocCol][newLocRow]);
-					}
-				}
-			}
+	public void dispose() {
+		stopModel();
+		super.dispose();
+	}
 
-			Collections.sort(people);
-
-			//find everyone's nearest infective
-			Vector<Person> nearestInfectives = new Vector<Person>(people.size());
-			for(int i = 0; i < people.size(); i++) {
-				Person p = people.get(i);
-				//find the nearest infective, if we are moving away from infectives and we are not infective
-				if(moveAwayFromInfectives && p.getType() != Person.INFECTIVE) {
-					//get a bounding box for us that has "radius" 2
-					Rectangle ourRect = p.getIntersectionRectangle(2);
-					Person nearestInfective = null;
-					double distanceToNearestInfective = Double.MAX_VALUE;
-					//check it against every other persons and find nearest infective, if they exist
-					for(int j = 0; j < people.size(); j++) {
-						if(i == j) continue;
-						Person lookingAt = people.get(j);
-
-						if(lookingAt.getType() == Person.INFECTIVE) {
-							if(ourRect.intersects(lookingAt)) {
-								if(p.getLocation().distance(lookingAt.getLocation()) < distanceToNearestInfective) {
-									distanceToNearestInfective = p.getLocation().distance(lookingAt.getLocation());
-									nearestInfective = lookingAt;
-								}
-							}
-						}
-					}		
-					//store the nearest infective
-					nearestInfectives.insertElementAt(nearestInfective, i);
-				} else {
-					//we are not moving away from nearest infectives, so just store a null
-					nearestInfectives.insertElementAt(null, i);
-				}
-			}			
-
-			//move everyone
-			for(int i = 0; i < people.size(); i++) {
-				Person p = people.get(i);
-				p.Move(nearestInfectives.get(i));
-				//make people get better or become susceptible if needbe
-				if(p.getType() == Person.INFECTIVE)
-					p.getWellSoon();
-				if(p.getType() == Person.RECOVERED)
-					p.getSickSoon();
-			}
+	/**
+	 * @return the simulation this window is showing
+	 */
+	public SimulationEngine getEngine() {
+		return engine;
+	}
 
-			//Sort everyone, now that everyone has moved
-			Collections.sort(people);
-
-			//check for collisions
-			int collisionRadius = 2;
-			for(Person outer : people) {
-				//get all the people nearby
-				List<Person> nearbyPeople = lookNearby(outer, collisionRadius);
-				//go through all those people, and check for collisions
-				for(Person inner : nearbyPeople) {
-					if(Math.abs(outer.getX() - inner.getX()) < collisionRadius*outer.getWidth() &&
-							Math.abs(outer.getY() - inner.getY()) < collisionRadius*outer.getHeight()) {
-						Person.collision(outer, inner);
-					}
-				}
+	/**
+	 * @return what decides when this model steps
+	 */
+	public StepScheduler getScheduler() {
+		return scheduler;
+	}
 
-			}
+	/**
+	 * Run the model
+	 * Go through the required timesteps, stepping the engine and handing the renderer a snapshot whenever it can show one
+	 * The scheduler blocks this thread while the model is paused or waiting out the delay
+	 */
+	public void runModel() {
+		//go through all of the timesteps
+		while(!engine.isFinished() && scheduler.awaitNextStep()) {
+			engine.step();
 
-			//repaint the screen
-			repaint();	
+			//the last step, and any step we're about to pause after, should always be seen
+			if(renderer.isFrameDue() || engine.isFinished() || scheduler.isPaused())
+				renderer.publish(engine);
 		}
 	}
 
@@ -395,7 +206,7 @@ public class DiseaseModel extends JFrame implements ChangeListener, WindowListen
 		if(e.getSource() == delaySlider) {
 			JSlider sliderSource = (JSlider) source;
 			if(!sliderSource.getValueIsAdjusting()) {
-				timestepDelay = (int)sliderSource.getValue();
+				scheduler.setDelay(sliderSource.getValue());
 			}
 		}
 		repaint();
@@ -419,93 +230,24 @@ public class DiseaseModel extends JFrame implements ChangeListener, WindowListen
 
 
 	//paint the screen - let the slider take care of itself
+	//everything comes from the renderer's newest snapshot, so the people and the graph always match
 	public void paint(Graphics g) {
 		super.paint(g);
-
-		//get the graphics object, and make it into a 2D object
-		g = getGraphics();
 		Graphics2D g2d = (Graphics2D) g;
 
-		//remove all the old people in the screen
-		g2d.setColor(backgroundColor);
-		for(Person p : people) {
-			g2d.fill(p.getPreviousPerson());
-		}
-
 		//draw all the people inside the screen
-		for(Person p : people) {
-			//set color based on type
-			g2d.setColor(Person.diseaseStateColors[p.getType()]);
-			//fill the person with the correct color
-			g2d.fill(p);
-		}
+		g2d.drawImage(renderer.render(), SCREEN.x, SCREEN.y, null);
 
 		//draw lines along the screen's borders
 		g2d.setColor(Color.BLACK);
 		g2d.draw(SCREEN);
 		//draw the graph
-		paintGraph(g2d);
-	}
-
-	private void paintGraph(Graphics2D g2d) {
-		//draw the outline of the graph bounding rectangle
-		g2d.setColor(Color.black);
-		g2d.draw(GRAPH_BOUNDING_RECT);
-
-		//draw & label the axies (total num people on Y, total num timesteps on X
-		g2d.setColor(Color.BLACK);
-		g2d.setStroke(new BasicStroke(2));
-		g2d.drawLine(getGraphXLocation(0), getGraphYLocation(0), getGraphXLocation(0), getGraphYLocation(people.size()));
-		g2d.drawLine(getGraphXLocation(0), getGraphYLocation(0), getGraphXLocation(totalNumTimesteps), getGraphYLocation(0));
-
-		//draw axis labels
-		Font labelFont = new Font("Serif", Font.PLAIN, 12);
-		g2d.setFont(labelFont);
-		for(int i = 0; i <= totalNumTimesteps; i+= totalNumTimesteps / 10)
-			g2d.drawString(""+i, getGraphXLocation(i), getGraphYLocation(0) + 20);
-		g2d.drawString("Number of timesteps", getGraphXLocation(totalNumTimesteps/2), getGraphYLocation(0) + 40);
-		for(int i = 0; i <= people.size(); i+= people.size()/10)
-			g2d.drawString(""+i, getGraphXLocation(0) - 20, getGraphYLocation(i));
-		g2d.rotate(-1*Math.PI/2, getGraphXLocation(0), getGraphYLocation(people.size()/2));
-		g2d.drawString("Number of People", getGraphXLocation(0), getGraphYLocation(people.size()/2) - 30);
-		g2d.rotate(Math.PI/2, getGraphXLocation(0), getGraphYLocation(people.size()/2));
-
-		//go through the totals array.  Draw a dot for each timestep, and a line from each timestep to the next
-		final int DOT_WIDTH = 2;
-		final int DOT_HEGIHT = 2;
-		g2d.setStroke(new BasicStroke(1));
-		g2d.setColor(Person.diseaseStateColors[Person.SUSCEPTIBLE]);
-		g2d.fillRect(getGraphXLocation(0), getGraphYLocation(totals[Person.SUSCEPTIBLE][0]), DOT_WIDTH, DOT_HEGIHT);
-		for(int i = 1; i < curTimestep; i++) {
-			g2d.drawLine(getGraphXLocation(i-1), getGraphYLocation(totals[Person.SUSCEPTIBLE][i-1]), getGraphXLocation(i), getGraphYLocation(totals[Person.SUSCEPTIBLE][i]));
-			//			g2d.fillRect(getGraphXLocation(i), getGraphYLocation(totals[Person.SUSCEPTIBLE][i-1]), DOT_WIDTH, DOT_HEGIHT);
-		}
-		g2d.setColor(Person.diseaseStateColors[Person.INFECTIVE]);
-		g2d.fillRect(getGraphXLocation(0), getGraphYLocation(totals[Person.INFECTIVE][0]), DOT_WIDTH, DOT_HEGIHT);
-		for(int i = 1; i < curTimestep; i++) {
-			g2d.drawLine(getGraphXLocation(i-1), getGraphYLocation(totals[Person.INFECTIVE][i-1]), getGraphXLocation(i), getGraphYLocation(totals[Person.INFECTIVE][i]));
-			//			g2d.fillRect(getGraphXLocation(i), getGraphYLocation(totals[Person.INFECTIVE][i-1]), DOT_WIDTH, DOT_HEGIHT);
-		}
-		g2d.setColor(Person.diseaseStateColors[Person.RECOVERED]);
-		g2d.fillRect(getGraphXLocation(0), getGraphYLocation(totals[Person.RECOVERED][0]), DOT_WIDTH, DOT_HEGIHT);
-		for(int i = 1; i < curTimestep; i++) {
-			g2d.drawLine(getGraphXLocation(i-1), getGraphYLocation(totals[Person.RECOVERED][i-1]), getGraphXLocation(i), getGraphYLocation(totals[Person.RECOVERED][i]));
-		}
-	}
-
-	//returns the X Location on the UI of the passed value
-	//values should be timestep values
-	private int getGraphXLocation(int value) {
-		int minXLocation = (int)GRAPH_BOUNDING_RECT.getX() + 50;
-		int maxXLocation = (int)GRAPH_BOUNDING_RECT.getMaxX() - 10;
-		return (int)((maxXLocation - minXLocation) * ((double)value / totalNumTimesteps) + minXLocation); 
+		paintGraph(g2d, renderer.getShownTimestep());
 	}
 
-	//returns the Y location on the UI of the passed value
-	private int getGraphYLocation(int value) {
-		int minYLocation = (int) GRAPH_BOUNDING_RECT.getY() + 10;
-		int maxYLocation = (int) GRAPH_BOUNDING_RECT.getMaxY() - 50;
-		return (int)(maxYLocation - (maxYLocation - minYLocation) * ((double)value / people.size()));
+	//draw the graph, adding whatever timesteps it hasn't drawn yet
+	private void paintGraph(Graphics2D g2d, int curTimestep) {
+		g2d.drawImage(chart.update(engine.getTotals(), curTimestep), GRAPH_BOUNDING_RECT.x, GRAPH_BOUNDING_RECT.y, null);
 	}
 
 }
\ No newline at end of file
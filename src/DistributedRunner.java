@@ -0,0 +1,451 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs the model with locations split across several DistributedWorker processes, so a run can be bigger than one
+ * process's memory.  Each worker owns some of the locations and the people in them; this runner hands the workers
+ * their share, passes the people they need from each other between them once or twice a step, and adds up their
+ * counts into the totals.  The totals are exactly the same as SimulationEngine's for the same parameters and seed.
+ *
+ *   java DistributedRunner params.properties 4 totals.csv seed=12
+ *
+ * starts 4 workers on this machine and waits for them to finish.  With -port the runner listens on that port (instead
+ * of any free one), and with -external it starts no workers of its own but waits for them to be started by hand, on
+ * this machine or another:
+ *
+ *   java DistributedRunner params.properties 2 totals.csv -port 7070 -external
+ *   java DistributedWorker runnerhost 7070          (twice)
+ *
+ * The output is written the same way as BatchRunner's, without location counts.  The locations are split into runs of
+ * ids, so each worker has whole columns where it can, and there can't be more workers than locations.
+ *
+ * Everything goes over one socket per worker, as big-endian ints and longs.  A worker starts with DistributedWorker.MAGIC
+ * and VERSION, and gets back the same, then its index, the number of workers, the parameters the way a Checkpoint writes
+ * them and the worker owning each location.  It places its people, then reports.  Each step is then:
+ * - STEP and the timestep, from the runner
+ * - from each worker, for each worker in turn, the number of people moving there, the number to be looked at there, and
+ *   their records (see DistributedWorker.Records) - and back from the runner, everything all the workers sent it.
+ *   This happens twice when people avoid infectives, and once otherwise
+ * - the report from each worker: its change in each count since it started, what happened during the step, and how
+ *   many people it has
+ * and STOP ends it.
+ *
+ */
+public class DistributedRunner {
+
+	private static final int[] TYPES = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+	private static final int[] EVENTS = {CompartmentCounters.INFECTION, CompartmentCounters.RECOVERY, CompartmentCounters.IMMUNITY_LOST};
+
+	//how long to wait for the workers to turn up
+	private static final int ACCEPT_TIMEOUT_MILLIS = 60000;
+
+	private ModelParameters params;
+	private int numWorkers;
+
+	//the connection to each worker
+	private Socket[] sockets;
+	private DataInputStream[] in;
+	private DataOutputStream[] out;
+
+	//which worker owns each location, by id, and how many people each worker has
+	private int[] owners;
+	private int[] workerSizes;
+
+	//the people on their way to each worker during an exchange
+	private DistributedWorker.Records[] migrants;
+	private DistributedWorker.Records[] lookers;
+
+	//how many people are of each type right now, added up from the workers, by type
+	private long[] counts = new long[TYPES.length + 1];
+
+	//totals[type][timestep] and incidence[event][timestep], the same as the engine's - and like the engine's, only the
+	//last few timesteps without params.keepAllTotals, going round and round
+	private int[][] totals;
+	private int[][] incidence;
+
+	//where every step's row is written as soon as it's run - null if nowhere
+	private TrajectoryOutput output;
+
+	private int curTimestep = 0;
+	private String stopReason;
+
+	/**
+	 * Wait on <server> for <numWorkers> DistributedWorkers, and give each of them their share of the run <params> describe
+	 * @throws IllegalArgumentException if the parameters are not valid, or there are more workers than locations
+	 * @throws IOException if a worker doesn't turn up, or can't be talked to
+	 */
+	public DistributedRunner(ModelParameters params, ServerSocket server, int numWorkers) throws IOException {
+		if(!params.isValid())
+			throw new IllegalArgumentException("INVALID ARGUMENTS");
+		LocationGrid locations = SimulationEngine.createLocations(params);
+		if(numWorkers < 1 || numWorkers > locations.getNumLocations())
+			throw new IllegalArgumentException("need between 1 and " + locations.getNumLocations() + " workers, one for each location at most");
+		this.params = params;
+		this.numWorkers = numWorkers;
+
+		//split the locations into runs of ids, which go down each column first
+		owners = new int[locations.getNumLocations()];
+		for(int loc = 0; loc < owners.length; loc++) {
+			owners[loc] = (int) ((long) loc * numWorkers / owners.length);
+		}
+
+		int history = params.keepAllTotals ? params.numTimesteps + 1 : Math.max(1, params.steadyStateWindow);
+		totals = new int[TYPES.length + 1][history];
+		incidence = new int[EVENTS.length][history];
+		workerSizes = new int[numWorkers];
+		migrants = new DistributedWorker.Records[numWorkers];
+		lookers = new DistributedWorker.Records[numWorkers];
+		sockets = new Socket[numWorkers];
+		in = new DataInputStream[numWorkers];
+		out = new DataOutputStream[numWorkers];
+
+		byte[] block = new byte[DistributedWorker.PARAMETER_BYTES];
+		Checkpoint.writeParameters(ByteBuffer.wrap(block), params);
+		server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+		try {
+			for(int w = 0; w < numWorkers; w++) {
+				migrants[w] = new DistributedWorker.Records();
+				lookers[w] = new DistributedWorker.Records();
+				sockets[w] = server.accept();
+				sockets[w].setTcpNoDelay(true);
+				in[w] = new DataInputStream(new BufferedInputStream(sockets[w].getInputStream(), 1 << 16));
+				out[w] = new DataOutputStream(new BufferedOutputStream(sockets[w].getOutputStream(), 1 << 16));
+				if(in[w].readInt() != DistributedWorker.MAGIC || in[w].readInt() != DistributedWorker.VERSION)
+					throw new IOException("something other than a DistributedWorker, or a different version of one, connected");
+				out[w].writeInt(DistributedWorker.MAGIC);
+				out[w].writeInt(DistributedWorker.VERSION);
+				out[w].writeInt(w);
+				out[w].writeInt(numWorkers);
+				out[w].write(block);
+				for(int owner : owners) {
+					out[w].writeInt(owner);
+				}
+				out[w].flush();
+			}
+			readReports(0);
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+		checkStopConditions();
+	}
+
+	/**
+	 * Start <numWorkers> DistributedWorkers on this machine, with the same java and class path as this one,
+	 * that connect to a runner on <port>
+	 */
+	public static Process[] startWorkers(int numWorkers, int port) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process[] workers = new Process[numWorkers];
+		for(int w = 0; w < numWorkers; w++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					"DistributedWorker", InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(port));
+			builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			workers[w] = builder.start();
+		}
+		return workers;
+	}
+
+	/**
+	 * Has the run used up its timesteps, or been stopped early by one of the stop conditions the parameters ask for?
+	 */
+	public boolean isFinished() {
+		return stopReason != null;
+	}
+
+	/**
+	 * Run the next <n> timesteps, or until the model is finished
+	 */
+	public void run(int n) throws IOException {
+		for(int i = 0; i < n && !isFinished(); i++) {
+			step();
+		}
+	}
+
+	/**
+	 * Run one timestep on every worker: record the totals, then pass people between the workers as they need them
+	 * @throws IOException if a worker goes away
+	 */
+	public void step() throws IOException {
+		if(isFinished()) return;
+
+		int row = curTimestep % totals[0].length;
+		for(int type : TYPES) {
+			totals[type][row] = (int) counts[type];
+		}
+		for(int w = 0; w < numWorkers; w++) {
+			out[w].writeInt(DistributedWorker.STEP);
+			out[w].writeInt(curTimestep);
+			out[w].flush();
+		}
+		if(params.moveAwayFromInfectives)
+			exchange();
+		exchange();
+		readReports(row);
+		if(output != null)
+			output.stepFinished(curTimestep, row, totals, incidence);
+
+		curTimestep++;
+		checkStopConditions();
+	}
+
+	//take what every worker is sending every other worker, and pass it on
+	private void exchange() throws IOException {
+		for(int w = 0; w < numWorkers; w++) {
+			for(int to = 0; to < numWorkers; to++) {
+				int numMigrants = in[w].readInt();
+				int numLookers = in[w].readInt();
+				migrants[to].read(in[w], numMigrants);
+				lookers[to].read(in[w], numLookers);
+			}
+		}
+		for(int to = 0; to < numWorkers; to++) {
+			out[to].writeInt(migrants[to].size);
+			out[to].writeInt(lookers[to].size);
+			migrants[to].write(out[to]);
+			lookers[to].write(out[to]);
+			out[to].flush();
+			migrants[to].size = 0;
+			lookers[to].size = 0;
+		}
+	}
+
+	//add up what the workers say the counts are now, and what happened during the timestep kept at <row>
+	private void readReports(int row) throws IOException {
+		long[] sums = new long[TYPES.length + EVENTS.length];
+		for(int w = 0; w < numWorkers; w++) {
+			for(int k = 0; k < sums.length; k++) {
+				sums[k] += in[w].readLong();
+			}
+			workerSizes[w] = in[w].readInt();
+		}
+		for(int k = 0; k < TYPES.length; k++) {
+			counts[TYPES[k]] = sums[k];
+		}
+		for(int k = 0; k < EVENTS.length; k++) {
+			incidence[EVENTS[k]][row] = (int) sums[TYPES.length + k];
+		}
+	}
+
+	//see if the run is over, and why - the same conditions ModelParameters asks the engine for
+	private void checkStopConditions() {
+		if(curTimestep >= params.numTimesteps)
+			stopReason = StopConditions.ALL_TIMESTEPS;
+		else if(params.stopWhenNoInfectives && counts[Person.INFECTIVE] == 0)
+			stopReason = StopConditions.NO_INFECTIVES;
+		else if(params.steadyStateWindow > 0 && isSteady(params.steadyStateWindow, params.steadyStateTolerance * params.initTotalPeople))
+			stopReason = StopConditions.STEADY_STATE;
+	}
+
+	//have the counts each stayed within <allowed> of each other for the last <window> timesteps?
+	private boolean isSteady(int window, double allowed) {
+		if(curTimestep < window)
+			return false;
+		for(int type : TYPES) {
+			long min = counts[type];
+			long max = min;
+			for(int t = curTimestep - window; t < curTimestep; t++) {
+				min = Math.min(min, totals[type][t % totals[type].length]);
+				max = Math.max(max, totals[type][t % totals[type].length]);
+			}
+			if(max - min > allowed)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tell the workers the run is over, and hang up on them
+	 */
+	public void close() {
+		for(int w = 0; w < numWorkers; w++) {
+			if(sockets[w] == null)
+				continue;
+			try {
+				out[w].writeInt(DistributedWorker.STOP);
+				out[w].flush();
+			} catch(IOException e) {
+				//it's gone already
+			}
+			try {
+				sockets[w].close();
+			} catch(IOException e) {
+				//nothing more to do with it
+			}
+			sockets[w] = null;
+		}
+	}
+
+	/**
+	 * @return why the run stopped, like StopConditions.NO_INFECTIVES, or null if it hasn't
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * @return how many people are of type <type> (like Person.INFECTIVE) right now, across all the workers
+	 */
+	public long getCount(int type) {
+		return counts[type];
+	}
+
+	/**
+	 * @return how many people each worker had at the end of the last step, by worker
+	 */
+	public int[] getWorkerSizes() {
+		return workerSizes.clone();
+	}
+
+	/**
+	 * Write every step's row to <output> as soon as it's run
+	 */
+	public void setOutput(TrajectoryOutput output) {
+		this.output = output;
+	}
+
+	/**
+	 * @return the totals array - totals[type][timestep] is the number of people of that type at the start of that timestep
+	 * @throws IllegalStateException if only the last few timesteps are kept - the rows are in the TrajectoryOutput then
+	 */
+	public int[][] getTotals() {
+		checkAllTotalsKept();
+		return totals;
+	}
+
+	/**
+	 * @return the incidence array - incidence[event][timestep] is how many times <event> happened during that timestep
+	 * @throws IllegalStateException if only the last few timesteps are kept
+	 */
+	public int[][] getIncidence() {
+		checkAllTotalsKept();
+		return incidence;
+	}
+
+	private void checkAllTotalsKept() {
+		if(totals[0].length <= params.numTimesteps)
+			throw new IllegalStateException("only the last " + totals[0].length + " timesteps of totals are kept - the rest went to the output");
+	}
+
+	public ModelParameters getParameters() {
+		return params;
+	}
+
+	/**
+	 * @return the timestep that will be run next
+	 */
+	public int getCurrentTimestep() {
+		return curTimestep;
+	}
+
+	private static void usage() {
+		System.err.println("usage: java DistributedRunner <parameter file> <workers> [<output csv or bin>] [-port <port>] [-external] [key=value ...]");
+		System.err.println("keys: " + String.join(", ", ParameterFile.KEYS));
+		System.exit(1);
+	}
+
+	/**
+	 * @param args the parameter file, the number of workers, then optionally the output file, then any overrides
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2)
+			usage();
+
+		Properties properties = ParameterFile.load(new File(args[0]));
+		String outputFile = null;
+		int numWorkers = 0;
+		int port = 0;
+		boolean external = false;
+		ModelParameters params = null;
+		try {
+			numWorkers = Integer.parseInt(args[1]);
+			for(int i = 2; i < args.length; i++) {
+				if(args[i].equals("-port")) {
+					if(i + 1 == args.length)
+						usage();
+					port = Integer.parseInt(args[++i]);
+				} else if(args[i].equals("-external"))
+					external = true;
+				else if(args[i].indexOf('=') >= 0)
+					ParameterFile.override(properties, args[i]);
+				else if(outputFile == null && !args[i].startsWith("-"))
+					outputFile = args[i];
+				else
+					usage();
+			}
+			params = ParameterFile.fromProperties(properties);
+		} catch(NumberFormatException e) {
+			usage();
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		if(params.solver != ModelParameters.AGENT_SOLVER) {
+			System.err.println("Only the agent model can be split across workers - use BatchRunner for solver=" + properties.getProperty("solver"));
+			System.exit(1);
+		}
+
+		int numLocations = SimulationEngine.createLocations(params).getNumLocations();
+		if(numWorkers < 1 || numWorkers > numLocations) {
+			System.err.println("need between 1 and " + numLocations + " workers, one for each location at most");
+			System.exit(1);
+		}
+
+		//every row goes to the output, so the runner needn't keep them
+		OutputStream stream = outputFile == null ? System.out : new FileOutputStream(outputFile);
+		int format = outputFile != null && outputFile.endsWith(".bin") ? TrajectoryOutput.BINARY : TrajectoryOutput.CSV;
+		params.keepAllTotals = false;
+
+		long start = System.currentTimeMillis();
+		ServerSocket server = new ServerSocket(port);
+		Process[] workers = new Process[0];
+		if(external)
+			System.err.println("Waiting for " + numWorkers + " workers on port " + server.getLocalPort());
+		else
+			workers = startWorkers(numWorkers, server.getLocalPort());
+
+		DistributedRunner runner;
+		try {
+			runner = new DistributedRunner(params, server, numWorkers);
+		} finally {
+			server.close();
+		}
+
+		TrajectoryOutput output = new TrajectoryOutput(stream, format, 0);
+		runner.setOutput(output);
+		try {
+			runner.run(params.numTimesteps);
+		} finally {
+			runner.close();
+			output.close();
+			for(Process worker : workers) {
+				try {
+					worker.waitFor();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		StringBuilder sizes = new StringBuilder();
+		for(int size : runner.getWorkerSizes()) {
+			sizes.append(sizes.length() == 0 ? "" : ", ").append(size);
+		}
+		System.err.println("Ran " + params.initTotalPeople + " people on " + numWorkers + " workers for " + runner.getCurrentTimestep()
+				+ " timesteps with seed " + params.seed + " in " + (System.currentTimeMillis() - start) + " ms, stopped by " + runner.getStopReason());
+		System.err.println("People per worker at the end: " + sizes);
+	}
+}
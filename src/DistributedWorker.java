@@ -0,0 +1,561 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * One of the processes a DistributedRunner splits a run with locations across, so a run isn't held to one machine's
+ * memory.  Started by the runner, or by hand with where the runner is listening:
+ *
+ *   java DistributedWorker localhost 7070
+ *
+ * The runner gives each worker some of the locations, and the worker owns the people in those locations' parts of the
+ * world - the same parts a ShardedStepper's shards own - and nobody else.  It works out who starts there itself, from
+ * everyone's own stream, so the whole population is never in one place.
+ *
+ * Workers only ever change their own people.  Everything they need from each other goes through the runner once or
+ * twice a step, in one batch per worker:
+ * - infectives close enough to another worker's part of the world to be run from, before anyone looks for them
+ * - after the move, people who moved into another worker's part of the world, and people close enough to another
+ *   worker's people to collide with them - those are only looked at over there, never changed
+ * At the end of every step each worker tells the runner how its counts changed.  People draw from their own streams by
+ * their index in the whole population, and go through SimulationEngine's own rules for each part of the step, against
+ * exactly the people the single process engine would check them against, so the totals are exactly the same as
+ * SimulationEngine's for the same seed.
+ *
+ * The protocol is plain big-endian ints over one socket to the runner - see DistributedRunner.
+ *
+ */
+public class DistributedWorker {
+
+	//the start of the conversation, both ways
+	static final int MAGIC = 0x444D4457;
+	static final int VERSION = 1;
+
+	//what the runner can tell a worker to do
+	static final int STEP = 1;
+	static final int STOP = 2;
+
+	//the room the parameters get, written the way a Checkpoint writes them
+	static final int PARAMETER_BYTES = 256;
+
+	//how far someone can reach to collide with or be run from someone else
+	private static final int COLLISION_REACH = SimulationEngine.COLLISION_RADIUS * Person.WIDTH;
+	private static final int AVOID_REACH = (SimulationEngine.AVOID_RADIUS + 1) * Person.WIDTH;
+
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	//which worker this is, out of how many, and which worker owns each location, by id
+	private int index;
+	private int numWorkers;
+	private int[] owners;
+
+	private ModelParameters params;
+	private LocationGrid locations;
+	private StreamRandom rng;
+
+	//this worker's people first, then anyone sent here to be looked at for the current phase of the step
+	private Members people;
+	private int numMembers;
+
+	//the changes of type and location this worker's people made - these start from nothing, so they add up to the
+	//real counts across all the workers
+	private CompartmentCounters changes;
+
+	//the area this worker's grids cover: its part of the world and as far past it as anyone can reach
+	private int gridX, gridY, gridWidth, gridHeight;
+	private SpatialGrid grid;
+	private SpatialGrid infectiveGrid;
+
+	//everyone's nearest infective this step, by slot in <people>, or Population.NONE
+	private int[] nearestInfectives = new int[16];
+
+	//what to send each worker this step, what came in, and people who moved away but are still needed here for collisions
+	private Records[] migrantsTo;
+	private Records[] lookersTo;
+	private Records arrivals = new Records();
+	private Records visitors = new Records();
+	private Records stayingToLook = new Records();
+
+	//where the ghosts a person needs to be sent to get worked out, so a step makes no new objects
+	private int[] targets = new int[3];
+
+	/**
+	 * @param args where the DistributedRunner is listening: host, then port
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.err.println("usage: java DistributedWorker <runner host> <runner port>");
+			System.exit(1);
+		}
+		Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+		try {
+			new DistributedWorker(socket).run();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Introduce ourselves to the runner on the other end of <socket>, and set up whatever share of the run it gives us
+	 * @throws IOException if the runner can't be talked to, or isn't a DistributedRunner
+	 */
+	public DistributedWorker(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.flush();
+		if(in.readInt() != MAGIC || in.readInt() != VERSION)
+			throw new IOException("not a DistributedRunner, or a different version of one");
+
+		index = in.readInt();
+		numWorkers = in.readInt();
+		byte[] block = new byte[PARAMETER_BYTES];
+		in.readFully(block);
+		params = Checkpoint.readParameters(ByteBuffer.wrap(block), Checkpoint.VERSION);
+		locations = SimulationEngine.createLocations(params);
+		owners = new int[locations.getNumLocations()];
+		for(int loc = 0; loc < owners.length; loc++) {
+			owners[loc] = in.readInt();
+		}
+
+		rng = new RandomStreams(params.seed).newGenerator();
+		changes = new CompartmentCounters(locations.getNumLocations());
+		people = new Members(locations);
+		migrantsTo = new Records[numWorkers];
+		lookersTo = new Records[numWorkers];
+		for(int w = 0; w < numWorkers; w++) {
+			migrantsTo[w] = new Records();
+			lookersTo[w] = new Records();
+		}
+		findGridArea();
+
+		//everyone who starts out in our part of the world - the same place they'd start in the engine
+		int[] place = new int[3];
+		for(int i = 0; i < params.initTotalPeople; i++) {
+			int type = SimulationEngine.startingPlace(i, params, locations, rng, place);
+			if(ownerAt(place[0], place[1]) == index) {
+				people.add(i, place[0], place[1], type, place[2]);
+				changes.add(place[2], type);
+			}
+		}
+		numMembers = people.size();
+		report();
+	}
+
+	//the smallest rectangle around every location we own, and as far past it as anyone can reach, inside the world
+	private void findGridArea() {
+		long left = Long.MAX_VALUE, right = Long.MIN_VALUE, top = Long.MAX_VALUE, bottom = Long.MIN_VALUE;
+		for(int c = 0; c < locations.getNumCols(); c++) {
+			for(int r = 0; r < locations.getNumRows(); r++) {
+				if(owners[locations.getId(c, r)] != index) continue;
+				left = Math.min(left, locations.getColumnStart(c));
+				right = Math.max(right, locations.getColumnStart(c + 1));
+				top = Math.min(top, locations.getRowStart(r));
+				bottom = Math.max(bottom, locations.getRowStart(r + 1));
+			}
+		}
+		int reach = Math.max(COLLISION_REACH, AVOID_REACH);
+		int areaRight = locations.getAreaX() + locations.getAreaWidth();
+		int areaBottom = locations.getAreaY() + locations.getAreaHeight();
+		gridX = (int) Math.max(locations.getAreaX(), left - reach);
+		gridY = (int) Math.max(locations.getAreaY(), top - reach);
+		gridWidth = (int) Math.min(areaRight, right + reach) - gridX;
+		gridHeight = (int) Math.min(areaBottom, bottom + reach) - gridY;
+	}
+
+	/**
+	 * Run steps until the runner says to stop
+	 * @throws IOException if the runner goes away
+	 */
+	public void run() throws IOException {
+		while(true) {
+			int command = in.readInt();
+			if(command == STOP)
+				return;
+			if(command != STEP)
+				throw new IOException("unknown command " + command);
+			step(in.readInt());
+		}
+	}
+
+	//one timestep, in the same order as the engine's, with the other workers' people sent over when they're needed
+	private void step(int step) throws IOException {
+		changes.clearIncidence();
+		if(nearestInfectives.length < numMembers)
+			nearestInfectives = new int[Math.max(numMembers, nearestInfectives.length * 2)];
+
+		//remember where everyone started, and change people's locations if needbe
+		for(int k = 0; k < numMembers; k++) {
+			rng.select(step, RandomStreams.PHASE_PREPARE, people.getId(k));
+			SimulationEngine.prepare(people, k, params, rng, changes);
+		}
+
+		//find everyone's nearest infective, here or sent over
+		if(params.moveAwayFromInfectives) {
+			for(int k = 0; k < numMembers; k++) {
+				if(people.getType(k) == Person.INFECTIVE)
+					sendToLookers(k, AVOID_REACH, index, null);
+			}
+			exchange();
+			infectiveGrid = fill(infectiveGrid, AVOID_REACH, true);
+			for(int k = 0; k < numMembers; k++) {
+				nearestInfectives[k] = people.getType(k) == Person.INFECTIVE ? Population.NONE
+						: SimulationEngine.findNearestInfective(people, k, infectiveGrid, null);
+			}
+		} else {
+			Arrays.fill(nearestInfectives, 0, numMembers, Population.NONE);
+		}
+
+		//move everyone - the infectives sent over are still there to be run from
+		for(int k = 0; k < numMembers; k++) {
+			rng.select(step, RandomStreams.PHASE_MOVE, people.getId(k));
+			people.move(k, nearestInfectives[k], rng);
+			people.recover(k, params, rng, changes);
+		}
+		people.truncate(numMembers);
+
+		//hand over anyone who moved into another worker's part of the world, and send everyone close enough to another
+		//worker's people to be collided with
+		stayingToLook.size = 0;
+		for(int k = numMembers - 1; k >= 0; k--) {
+			int owner = ownerAt(people.getX(k), people.getY(k));
+			sendToLookers(k, COLLISION_REACH, owner, stayingToLook);
+			if(owner != index) {
+				people.write(k, migrantsTo[owner]);
+				people.remove(k);
+				numMembers--;
+			}
+		}
+		exchange();
+
+		//check everyone here for collisions with anyone close enough, here or sent over
+		grid = fill(grid, COLLISION_REACH, false);
+		for(int k = 0; k < numMembers; k++) {
+			SimulationEngine.checkCollisions(people, k, grid, null, step, params, rng, changes, null);
+		}
+		people.truncate(numMembers);
+		report();
+	}
+
+	//which worker owns the part of the world x, y is in
+	private int ownerAt(int x, int y) {
+		return owners[locations.getId(locations.getNearestColumn(x), locations.getNearestRow(y))];
+	}
+
+	/*
+	 * Send person <k> to every worker but <owner> that owns a part of the world less than <reach> from them.
+	 * Like a ShardedStepper's shards, only the (up to 3) neighbouring parts in the direction of the edges they're near
+	 * can be that close.  If this worker needs them but isn't their owner, they go in <keep> instead
+	 */
+	private void sendToLookers(int k, int reach, int owner, Records keep) {
+		int x = people.getX(k);
+		int y = people.getY(k);
+		int col = locations.getNearestColumn(x);
+		int row = locations.getNearestRow(y);
+		int dc = x < locations.getColumnStart(col) + reach ? -1 : x >= locations.getColumnStart(col + 1) - reach ? 1 : 0;
+		int dr = y < locations.getRowStart(row) + reach ? -1 : y >= locations.getRowStart(row + 1) - reach ? 1 : 0;
+		int numTargets = 0;
+		if(dc != 0)
+			numTargets = addTarget(col + dc, row, owner, numTargets);
+		if(dr != 0)
+			numTargets = addTarget(col, row + dr, owner, numTargets);
+		if(dc != 0 && dr != 0)
+			numTargets = addTarget(col + dc, row + dr, owner, numTargets);
+		for(int t = 0; t < numTargets; t++) {
+			if(targets[t] == index)
+				people.write(k, keep);
+			else
+				people.write(k, lookersTo[targets[t]]);
+		}
+	}
+
+	//add the owner of location col, row to <targets>, unless it's off the grid, <owner> or there already
+	private int addTarget(int col, int row, int owner, int numTargets) {
+		if(col < 0 || col >= locations.getNumCols() || row < 0 || row >= locations.getNumRows())
+			return numTargets;
+		int target = owners[locations.getId(col, row)];
+		if(target == owner)
+			return numTargets;
+		for(int t = 0; t < numTargets; t++) {
+			if(targets[t] == target)
+				return numTargets;
+		}
+		targets[numTargets] = target;
+		return numTargets + 1;
+	}
+
+	/*
+	 * Send every worker what we have for it, through the runner, and take in what they sent us:
+	 * the people who moved here become ours, and everyone else goes after them, to be looked at until the next truncate.
+	 * Each batch is the number of migrants, the number of lookers, then their records
+	 */
+	private void exchange() throws IOException {
+		for(int w = 0; w < numWorkers; w++) {
+			out.writeInt(migrantsTo[w].size);
+			out.writeInt(lookersTo[w].size);
+			migrantsTo[w].write(out);
+			lookersTo[w].write(out);
+			migrantsTo[w].size = 0;
+			lookersTo[w].size = 0;
+		}
+		out.flush();
+
+		int numArrivals = in.readInt();
+		int numVisitors = in.readInt();
+		arrivals.size = 0;
+		arrivals.read(in, numArrivals);
+		visitors.size = 0;
+		visitors.read(in, numVisitors);
+		people.addAll(arrivals);
+		numMembers = people.size();
+		people.addAll(stayingToLook);
+		stayingToLook.size = 0;
+		people.addAll(visitors);
+	}
+
+	//tell the runner how the counts have changed since we started, what happened this step, and how many people we have
+	private void report() throws IOException {
+		out.writeLong(changes.getCount(Person.SUSCEPTIBLE));
+		out.writeLong(changes.getCount(Person.INFECTIVE));
+		out.writeLong(changes.getCount(Person.RECOVERED));
+		out.writeLong(changes.getIncidence(CompartmentCounters.INFECTION));
+		out.writeLong(changes.getIncidence(CompartmentCounters.RECOVERY));
+		out.writeLong(changes.getIncidence(CompartmentCounters.IMMUNITY_LOST));
+		out.writeInt(numMembers);
+		out.flush();
+	}
+
+	//<grid> emptied and filled with everyone in <people> (just the infectives if <infectivesOnly>) by slot, or a bigger one if it's too small
+	private SpatialGrid fill(SpatialGrid grid, int cellSize, boolean infectivesOnly) {
+		if(grid == null || grid.getCapacity() < people.size()) {
+			grid = new SpatialGrid(gridX, gridY, gridWidth, gridHeight, cellSize, Math.max(16, people.size() * 2), locations.isTorus());
+		} else {
+			grid.clear();
+		}
+		for(int k = 0; k < people.size(); k++) {
+			if(!infectivesOnly || people.getType(k) == Person.INFECTIVE)
+				grid.insert(k, people.getX(k), people.getY(k));
+		}
+		return grid;
+	}
+
+	/*
+	 * People as they're sent between processes: a batch of records of RECORD_INTS ints each -
+	 * index in the whole population, x, y, previous x, previous y, immunity counter, location, then type and previous type
+	 */
+	static class Records {
+		static final int RECORD_INTS = 8;
+
+		int[] data = new int[16 * RECORD_INTS];
+		int size;
+
+		//room for one more record, at the offset returned
+		int append() {
+			if((size + 1) * RECORD_INTS > data.length)
+				data = Arrays.copyOf(data, data.length * 2);
+			return size++ * RECORD_INTS;
+		}
+
+		//add the next <n> records from <in>
+		void read(DataInputStream in, int n) throws IOException {
+			for(int k = 0; k < n; k++) {
+				int at = append();
+				for(int f = 0; f < RECORD_INTS; f++) {
+					data[at + f] = in.readInt();
+				}
+			}
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			for(int k = 0; k < size * RECORD_INTS; k++) {
+				out.writeInt(data[k]);
+			}
+		}
+
+		void addAll(Records other) {
+			for(int k = 0; k < other.size; k++) {
+				System.arraycopy(other.data, k * RECORD_INTS, data, append(), RECORD_INTS);
+			}
+		}
+	}
+
+	/*
+	 * The people a worker has at hand, in parallel arrays like an ArrayPopulation, each with their index in the whole
+	 * population.  They come and go as they move between workers, so the last one is moved into the room anyone leaves
+	 */
+	private static class Members extends Population {
+		private int size;
+		private int[] id = new int[16];
+		private int[] x = new int[16];
+		private int[] y = new int[16];
+		private int[] previousX = new int[16];
+		private int[] previousY = new int[16];
+		private byte[] state = new byte[16];
+		private byte[] previousState = new byte[16];
+		private int[] immunityCounter = new int[16];
+		private int[] locationId = new int[16];
+
+		//the index in the whole population add() gives someone without one
+		private int nextId;
+
+		Members(LocationGrid locations) {
+			super(locations);
+		}
+
+		public int size() {
+			return size;
+		}
+
+		//someone new, numbered after everyone who's been here so far
+		public int add(int startX, int startY, int type, int startLocationId) {
+			return add(nextId, startX, startY, type, startLocationId);
+		}
+
+		int add(int personId, int startX, int startY, int type, int startLocationId) {
+			nextId = Math.max(nextId, personId + 1);
+			int i = grow();
+			id[i] = personId;
+			x[i] = previousX[i] = startX;
+			y[i] = previousY[i] = startY;
+			state[i] = previousState[i] = (byte) type;
+			immunityCounter[i] = 0;
+			locationId[i] = startLocationId;
+			return i;
+		}
+
+		//add everyone in <records>
+		void addAll(Records records) {
+			int[] data = records.data;
+			for(int at = 0; at < records.size * Records.RECORD_INTS; at += Records.RECORD_INTS) {
+				int i = grow();
+				id[i] = data[at];
+				nextId = Math.max(nextId, id[i] + 1);
+				x[i] = data[at + 1];
+				y[i] = data[at + 2];
+				previousX[i] = data[at + 3];
+				previousY[i] = data[at + 4];
+				immunityCounter[i] = data[at + 5];
+				locationId[i] = data[at + 6];
+				state[i] = (byte) data[at + 7];
+				previousState[i] = (byte) (data[at + 7] >> 8);
+			}
+		}
+
+		//add person <i> to <records>
+		void write(int i, Records records) {
+			int at = records.append();
+			int[] data = records.data;
+			data[at] = id[i];
+			data[at + 1] = x[i];
+			data[at + 2] = y[i];
+			data[at + 3] = previousX[i];
+			data[at + 4] = previousY[i];
+			data[at + 5] = immunityCounter[i];
+			data[at + 6] = locationId[i];
+			data[at + 7] = state[i] | previousState[i] << 8;
+		}
+
+		//take person <i> out, moving the last person into their place
+		void remove(int i) {
+			int last = --size;
+			id[i] = id[last];
+			x[i] = x[last];
+			y[i] = y[last];
+			previousX[i] = previousX[last];
+			previousY[i] = previousY[last];
+			state[i] = state[last];
+			previousState[i] = previousState[last];
+			immunityCounter[i] = immunityCounter[last];
+			locationId[i] = locationId[last];
+		}
+
+		//forget everyone from <newSize> on
+		void truncate(int newSize) {
+			size = newSize;
+		}
+
+		private int grow() {
+			if(size == id.length) {
+				int capacity = size * 2;
+				id = Arrays.copyOf(id, capacity);
+				x = Arrays.copyOf(x, capacity);
+				y = Arrays.copyOf(y, capacity);
+				previousX = Arrays.copyOf(previousX, capacity);
+				previousY = Arrays.copyOf(previousY, capacity);
+				state = Arrays.copyOf(state, capacity);
+				previousState = Arrays.copyOf(previousState, capacity);
+				immunityCounter = Arrays.copyOf(immunityCounter, capacity);
+				locationId = Arrays.copyOf(locationId, capacity);
+			}
+			return size++;
+		}
+
+		public int getId(int i) {
+			return id[i];
+		}
+
+		public int getX(int i) {
+			return x[i];
+		}
+
+		public int getY(int i) {
+			return y[i];
+		}
+
+		public void setPosition(int i, int newX, int newY) {
+			x[i] = newX;
+			y[i] = newY;
+		}
+
+		public int getType(int i) {
+			return state[i];
+		}
+
+		public void setType(int i, int type) {
+			state[i] = (byte) type;
+		}
+
+		public int getPreviousX(int i) {
+			return previousX[i];
+		}
+
+		public int getPreviousY(int i) {
+			return previousY[i];
+		}
+
+		public int getPreviousType(int i) {
+			return previousState[i];
+		}
+
+		public void savePrevious(int i) {
+			previousX[i] = x[i];
+			previousY[i] = y[i];
+			previousState[i] = state[i];
+		}
+
+		public int getImmunityCounter(int i) {
+			return immunityCounter[i];
+		}
+
+		public void setImmunityCounter(int i, int count) {
+			immunityCounter[i] = count;
+		}
+
+		public int getLocationId(int i) {
+			return locationId[i];
+		}
+
+		public void setLocationId(int i, int newLocationId) {
+			locationId[i] = newLocationId;
+		}
+	}
+}
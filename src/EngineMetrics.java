@@ -0,0 +1,192 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * A MetricsListener that adds up the metrics of every step, and can show them over JMX.
+ * Cheap enough to leave on for a whole run - a few additions per step - and summary() prints where the time went.
+ *
+ *   EngineMetrics metrics = new EngineMetrics(engine);
+ *   metrics.register("batch");    //shows up as DiseaseModel:type=EngineMetrics,name=batch
+ *
+ */
+public class EngineMetrics implements MetricsListener, EngineMetricsMBean {
+
+	private SimulationEngine engine;
+	private ObjectName name;
+
+	private long steps;
+	private long stepNanos;
+	private long lastStepNanos;
+	private long[] phaseNanos = new long[StepMetrics.PHASE_NAMES.length];
+	private long collisionCandidates;
+	private long collisions;
+	private long infections;
+	private long lastStepInfections;
+	private long allocatedBytes;
+	private long lastStepAllocatedBytes;
+
+	/**
+	 * Start listening to <engine>
+	 */
+	public EngineMetrics(SimulationEngine engine) {
+		this.engine = engine;
+		engine.addMetricsListener(this);
+	}
+
+	public synchronized void stepFinished(SimulationEngine engine, StepMetrics metrics) {
+		steps++;
+		lastStepNanos = metrics.getStepNanos();
+		stepNanos += lastStepNanos;
+		for(int phase = 0; phase < phaseNanos.length; phase++) {
+			phaseNanos[phase] += metrics.getPhaseNanos(phase);
+		}
+		collisionCandidates += metrics.getCollisionCandidates();
+		collisions += metrics.getCollisions();
+		lastStepInfections = metrics.getInfections();
+		infections += lastStepInfections;
+		lastStepAllocatedBytes = metrics.getAllocatedBytes();
+		if(lastStepAllocatedBytes > 0)
+			allocatedBytes += lastStepAllocatedBytes;
+	}
+
+	/**
+	 * Show these metrics over JMX, as DiseaseModel:type=EngineMetrics,name=<name>
+	 */
+	public void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		this.name = new ObjectName("DiseaseModel:type=EngineMetrics,name=" + ObjectName.quote(name));
+		server.registerMBean(this, this.name);
+	}
+
+	/**
+	 * Stop showing these metrics over JMX, and stop listening to the engine
+	 */
+	public void close() {
+		engine.removeMetricsListener(this);
+		if(name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch(JMException e) {
+				//already gone
+			}
+			name = null;
+		}
+	}
+
+	public synchronized void reset() {
+		steps = 0;
+		stepNanos = 0;
+		lastStepNanos = 0;
+		for(int phase = 0; phase < phaseNanos.length; phase++) {
+			phaseNanos[phase] = 0;
+		}
+		collisionCandidates = 0;
+		collisions = 0;
+		infections = 0;
+		lastStepInfections = 0;
+		allocatedBytes = 0;
+		lastStepAllocatedBytes = 0;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	public synchronized long getSteps() {
+		return steps;
+	}
+
+	public int getCurrentTimestep() {
+		return engine.getCurrentTimestep();
+	}
+
+	public int getNumPeople() {
+		return engine.getPopulation().size();
+	}
+
+	public synchronized double getLastStepMillis() {
+		return millis(lastStepNanos);
+	}
+
+	public synchronized double getMeanStepMillis() {
+		return steps == 0 ? 0 : millis(stepNanos) / steps;
+	}
+
+	/**
+	 * @return the total time spent in <phase> (like StepMetrics.MOVE), in milliseconds
+	 */
+	public synchronized double getPhaseMillis(int phase) {
+		return millis(phaseNanos[phase]);
+	}
+
+	public double getCensusMillis() {
+		return getPhaseMillis(StepMetrics.CENSUS);
+	}
+
+	public double getPrepareMillis() {
+		return getPhaseMillis(StepMetrics.PREPARE);
+	}
+
+	public double getInfectiveGridMillis() {
+		return getPhaseMillis(StepMetrics.INFECTIVE_GRID);
+	}
+
+	public double getNearestMillis() {
+		return getPhaseMillis(StepMetrics.NEAREST);
+	}
+
+	public double getMoveMillis() {
+		return getPhaseMillis(StepMetrics.MOVE);
+	}
+
+	public double getGridMillis() {
+		return getPhaseMillis(StepMetrics.GRID);
+	}
+
+	public double getCollideMillis() {
+		return getPhaseMillis(StepMetrics.COLLIDE);
+	}
+
+	public synchronized long getCollisionCandidates() {
+		return collisionCandidates;
+	}
+
+	public synchronized long getCollisions() {
+		return collisions;
+	}
+
+	public synchronized long getInfections() {
+		return infections;
+	}
+
+	public synchronized long getLastStepInfections() {
+		return lastStepInfections;
+	}
+
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public synchronized long getLastStepAllocatedBytes() {
+		return lastStepAllocatedBytes;
+	}
+
+	/**
+	 * @return a few lines on where the time went and what happened
+	 */
+	public synchronized String summary() {
+		StringBuilder summary = new StringBuilder();
+		summary.append(steps).append(" steps, ").append(String.format("%.3f", getMeanStepMillis())).append(" ms per step\n");
+		for(int phase = 0; phase < phaseNanos.length; phase++) {
+			summary.append(String.format("  %-14s %10.1f ms  %5.1f%%%n", StepMetrics.PHASE_NAMES[phase], millis(phaseNanos[phase]),
+					stepNanos == 0 ? 0 : 100.0 * phaseNanos[phase] / stepNanos));
+		}
+		summary.append(collisionCandidates).append(" collision candidates, ").append(collisions).append(" collisions, ")
+			.append(infections).append(" infections, ").append(allocatedBytes).append(" bytes allocated\n");
+		return summary.toString();
+	}
+}
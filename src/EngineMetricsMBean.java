@@ -0,0 +1,36 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * What EngineMetrics shows over JMX, in jconsole or anything else that speaks it.
+ * Times are in milliseconds, and everything but the Last values is added up over every step so far.
+ *
+ */
+public interface EngineMetricsMBean {
+
+	public long getSteps();
+	public int getCurrentTimestep();
+	public int getNumPeople();
+
+	public double getLastStepMillis();
+	public double getMeanStepMillis();
+
+	public double getCensusMillis();
+	public double getPrepareMillis();
+	public double getInfectiveGridMillis();
+	public double getNearestMillis();
+	public double getMoveMillis();
+	public double getGridMillis();
+	public double getCollideMillis();
+
+	public long getCollisionCandidates();
+	public long getCollisions();
+	public long getInfections();
+	public long getLastStepInfections();
+
+	public long getAllocatedBytes();
+	public long getLastStepAllocatedBytes();
+
+	/**
+	 * Start adding up from zero again
+	 */
+	public void reset();
+}
@@ -0,0 +1,219 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs lots of independent copies (replicates) of the same model at once, one per core,
+ * and sums them up in a TrajectoryStatistics as they finish.
+ *
+ * Every replicate gets its own seed, picked from the master seed in the parameters, so the same master seed
+ * always gives the same ensemble.  Replicates are added to the statistics in order - a replicate that finishes early
+ * waits for the ones before it - so the statistics don't depend on which thread was fastest either.
+ * Only a few finished replicates are ever waiting like that, so memory doesn't grow with the number of replicates.
+ * With solver=gillespie or tauleap, the replicates are CompartmentModel runs instead of agent runs.
+ *
+ *   java EnsembleRunner params.properties 1000 ensemble.csv
+ *
+ */
+public class EnsembleRunner {
+
+	//the quantiles we estimate unless told otherwise
+	public static final double[] DEFAULT_QUANTILES = {.05, .5, .95};
+
+	//how many replicates each thread can get ahead of the oldest unfinished one
+	private static final int REPLICATES_AHEAD_PER_THREAD = 4;
+
+	private ModelParameters params;
+	private int numReplicates;
+	private int threads;
+	private TrajectoryStatistics statistics;
+
+	//handing out replicates, and putting the finished ones back in order
+	private int nextToRun;
+	private int nextToAdd;
+	private Map<Integer, int[][]> finished = new HashMap<Integer, int[][]>();
+	private Map<Integer, Integer> recorded = new HashMap<Integer, Integer>();
+	private boolean failed;
+
+	/**
+	 * Set up <numReplicates> runs of <params> on <threads> threads
+	 * Each run itself is single threaded, whatever params.threads and params.shardByLocation say
+	 */
+	public EnsembleRunner(ModelParameters params, int numReplicates, int threads, double[] quantiles) {
+		if(!params.isValid())
+			throw new IllegalArgumentException("INVALID ARGUMENTS");
+		if(numReplicates < 0 || threads <= 0)
+			throw new IllegalArgumentException("Need at least 0 replicates and 1 thread");
+		this.params = params;
+		this.numReplicates = numReplicates;
+		this.threads = threads;
+		statistics = new TrajectoryStatistics(params.numTimesteps, quantiles);
+	}
+
+	/**
+	 * @return the parameters for replicate number <replicate>
+	 */
+	public ModelParameters getReplicateParameters(int replicate) {
+		ModelParameters replicateParams = params.copy();
+		replicateParams.seed = new RandomStreams(params.seed).replicateSeed(replicate);
+		//the replicates are what's spread over the threads, so each one steps on its own thread - a ShardedStepper
+		//would start its own pool for every replicate.  Neither changes the results
+		replicateParams.threads = 0;
+		replicateParams.shardByLocation = false;
+		return replicateParams;
+	}
+
+	/**
+	 * Run every replicate, and wait for them all to finish
+	 * @return the statistics of all the runs
+	 */
+	public TrajectoryStatistics run() throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] workers = new Future<?>[threads];
+			for(int i = 0; i < threads; i++) {
+				workers[i] = pool.submit(new Runnable() {
+					public void run() {
+						runReplicates();
+					}
+				});
+			}
+			for(Future<?> worker : workers) {
+				worker.get();
+			}
+		} finally {
+			synchronized(this) {
+				failed = nextToAdd < numReplicates;
+				notifyAll();
+			}
+			pool.shutdownNow();
+		}
+		return statistics;
+	}
+
+	//keep taking replicates until there aren't any left
+	private void runReplicates() {
+		try {
+			int replicate;
+			while((replicate = takeReplicate()) >= 0) {
+				if(params.solver == ModelParameters.AGENT_SOLVER) {
+					SimulationEngine engine = new SimulationEngine(getReplicateParameters(replicate));
+					engine.run(params.numTimesteps);
+					engine.shutdown();
+					//a replicate that stopped early where nothing can change still counts for every timestep,
+					//but one that stopped at a steady state only counts for the timesteps it ran
+					addFinished(replicate, engine.getTotals(), engine.fillFrozenTotals());
+				} else {
+					CompartmentModel model = new CompartmentModel(getReplicateParameters(replicate));
+					model.run(params.numTimesteps);
+					addFinished(replicate, model.getTotals(), model.getCurrentTimestep());
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(RuntimeException e) {
+			//let the others stop waiting, then report it
+			synchronized(this) {
+				failed = true;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	//the next replicate to run, once we aren't too far ahead of the oldest unfinished one, or -1 when we're done
+	private synchronized int takeReplicate() throws InterruptedException {
+		while(!failed && nextToRun < numReplicates && nextToRun >= nextToAdd + threads * REPLICATES_AHEAD_PER_THREAD) {
+			wait();
+		}
+		if(failed || nextToRun >= numReplicates)
+			return -1;
+		return nextToRun++;
+	}
+
+	//add any replicates that are next in line to the statistics
+	private synchronized void addFinished(int replicate, int[][] totals, int numRecorded) {
+		finished.put(replicate, totals);
+		recorded.put(replicate, numRecorded);
+		while(finished.containsKey(nextToAdd)) {
+			statistics.add(finished.remove(nextToAdd), recorded.remove(nextToAdd));
+			nextToAdd++;
+		}
+		notifyAll();
+	}
+
+	private static void usage() {
+		System.err.println("usage: java EnsembleRunner <parameter file> <replicates> [<output csv>] [key=value ...]");
+		System.err.println("threads=<n> runs n replicates at once - every core by default");
+		System.exit(1);
+	}
+
+	/**
+	 * @param args the parameter file, the number of replicates, then optionally the output file and any overrides
+	 * The mean, standard deviation and quantiles of every timestep go to the output file (or standard out),
+	 * and how many runs peaked at each timestep goes to a -peaks.csv file next to it
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		if(args.length < 2)
+			usage();
+
+		Properties properties = ParameterFile.load(new File(args[0]));
+		String outputFile = null;
+		ModelParameters params = null;
+		int numReplicates = 0;
+		try {
+			numReplicates = Integer.parseInt(args[1]);
+			for(int i = 2; i < args.length; i++) {
+				if(args[i].indexOf('=') >= 0)
+					ParameterFile.override(properties, args[i]);
+				else if(outputFile == null)
+					outputFile = args[i];
+				else
+					usage();
+			}
+			params = ParameterFile.fromProperties(properties);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		int threads = params.threads > 0 ? params.threads : Runtime.getRuntime().availableProcessors();
+
+		long start = System.currentTimeMillis();
+		TrajectoryStatistics statistics = new EnsembleRunner(params, numReplicates, threads, DEFAULT_QUANTILES).run();
+		System.err.println("Ran " + numReplicates + " replicates on " + threads + " threads with master seed " + params.seed
+				+ " in " + (System.currentTimeMillis() - start) + " ms");
+		System.err.print(statistics.summary());
+
+		Writer out;
+		if(outputFile == null)
+			out = new BufferedWriter(new OutputStreamWriter(System.out));
+		else
+			out = new BufferedWriter(new FileWriter(new File(outputFile)));
+		try {
+			statistics.writeTrajectories(out);
+		} finally {
+			out.close();
+		}
+
+		if(outputFile != null) {
+			String peaksFile = outputFile.endsWith(".csv") ? outputFile.substring(0, outputFile.length() - 4) : outputFile;
+			Writer peaks = new BufferedWriter(new FileWriter(new File(peaksFile + "-peaks.csv")));
+			try {
+				statistics.writePeakTimes(peaks);
+			} finally {
+				peaks.close();
+			}
+		}
+	}
+}
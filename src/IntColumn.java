@@ -0,0 +1,135 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * A fixed number of ints, one for each person - in an ordinary array, or outside the heap the same way an
+ * OffHeapPopulation keeps its people, allocated directly or mapped from a scratch file.  The grids and the engine keep
+ * their per-person ints in these, so a run with an off heap store doesn't need any heap for each person either.
+ *
+ * Off the heap, the ints are in chunks of a few hundred million, each its own buffer, since a buffer can't be more than 2GB.
+ *
+ */
+public abstract class IntColumn {
+
+	//ints per chunk is a power of 2, so finding an int's chunk is a shift
+	private static final int CHUNK_SHIFT = 28;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	/**
+	 * @return <length> ints, all 0, kept the way <store> (like ModelParameters.OFF_HEAP_STORE) keeps people
+	 */
+	public static IntColumn create(int length, int store) {
+		if(store != ModelParameters.OFF_HEAP_STORE && store != ModelParameters.MAPPED_STORE)
+			return new OnHeap(length);
+		try {
+			if(store == ModelParameters.OFF_HEAP_STORE)
+				return new OffHeap(length, null);
+			File file = File.createTempFile("column", ".ints");
+			try {
+				return new OffHeap(length, file);
+			} finally {
+				//the mappings keep the space until they're collected, where the file system allows deleting a mapped file
+				if(!file.delete())
+					file.deleteOnExit();
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("couldn't map a file for " + length + " ints: " + e.getMessage(), e);
+		}
+	}
+
+	public abstract int get(int i);
+
+	public abstract void set(int i, int value);
+
+	public abstract int length();
+
+	/**
+	 * Set every int to <value>
+	 */
+	public void fill(int value) {
+		int n = length();
+		for(int i = 0; i < n; i++) {
+			set(i, value);
+		}
+	}
+
+	private static class OnHeap extends IntColumn {
+
+		private int[] values;
+
+		OnHeap(int length) {
+			values = new int[length];
+		}
+
+		public int get(int i) {
+			return values[i];
+		}
+
+		public void set(int i, int value) {
+			values[i] = value;
+		}
+
+		public int length() {
+			return values.length;
+		}
+
+		public void fill(int value) {
+			Arrays.fill(values, value);
+		}
+	}
+
+	private static class OffHeap extends IntColumn {
+
+		private int length;
+		private IntBuffer[] chunks;
+
+		//allocated directly, or mapped from <file> if it isn't null
+		OffHeap(int length, File file) throws IOException {
+			this.length = length;
+			chunks = new IntBuffer[(int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+			if(file == null) {
+				for(int c = 0; c < chunks.length; c++) {
+					chunks[c] = ByteBuffer.allocateDirect(chunkInts(c) * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+				}
+				return;
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(0);
+				raf.setLength(4L * length);
+				FileChannel channel = raf.getChannel();
+				for(int c = 0; c < chunks.length; c++) {
+					long start = ((long) c << CHUNK_SHIFT) * 4;
+					chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, start, chunkInts(c) * 4L).order(ByteOrder.nativeOrder()).asIntBuffer();
+				}
+			} finally {
+				//the mappings stay good after the file is closed
+				raf.close();
+			}
+		}
+
+		//how many ints chunk <c> holds
+		private int chunkInts(int c) {
+			return Math.min(CHUNK_MASK + 1, length - (c << CHUNK_SHIFT));
+		}
+
+		public int get(int i) {
+			return chunks[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+		}
+
+		public void set(int i, int value) {
+			chunks[i >>> CHUNK_SHIFT].put(i & CHUNK_MASK, value);
+		}
+
+		public int length() {
+			return length;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * The world people move around in, and the rectangles they are kept inside of, stored as plain ints and looked up by id.
+ * With locations turned off there is just one location, covering the whole world.
+ * Ids go down each column first: id = col * numRows + row
+ *
+ * The world's edges are walls, unless it's a single location that's a torus: then walking off one edge brings you
+ * back in the other side, and people near opposite edges are next to each other.  Positions on a torus are always
+ * inside the world, and differenceX() and differenceY() give the shortest way around.
+ *
+ */
+public class LocationGrid {
+
+	//space left between neighbouring locations
+	public static final int LOCATION_BUFFER_WIDTH = 5*Person.WIDTH;
+
+	private int numCols;
+	private int numRows;
+
+	//the whole world, and whether its edges wrap around
+	private int areaX;
+	private int areaY;
+	private int areaWidth;
+	private int areaHeight;
+	private boolean torus;
+
+	//how far apart neighbouring locations start, and the space between them
+	private int pitchX;
+	private int pitchY;
+	private int buffer;
+
+	//the bounding rectangle of each location, by id
+	private int[] x;
+	private int[] y;
+	private int[] width;
+	private int[] height;
+
+	/**
+	 * Splits the area at x, y of the given size into <numCols> by <numRows> locations,
+	 * with LOCATION_BUFFER_WIDTH between them
+	 */
+	public LocationGrid(int areaX, int areaY, int areaWidth, int areaHeight, int numCols, int numRows) {
+		this(areaX, areaY, areaWidth, areaHeight, numCols, numRows, LOCATION_BUFFER_WIDTH);
+	}
+
+	/**
+	 * A single location covering the whole area
+	 */
+	public LocationGrid(int areaX, int areaY, int areaWidth, int areaHeight) {
+		this(areaX, areaY, areaWidth, areaHeight, 1, 1, 0);
+	}
+
+	/**
+	 * A single location covering the whole area, whose edges wrap around if <torus>
+	 */
+	public LocationGrid(int areaX, int areaY, int areaWidth, int areaHeight, boolean torus) {
+		this(areaX, areaY, areaWidth, areaHeight, 1, 1, 0);
+		this.torus = torus;
+	}
+
+	private LocationGrid(int areaX, int areaY, int areaWidth, int areaHeight, int numCols, int numRows, int buffer) {
+		this.areaX = areaX;
+		this.areaY = areaY;
+		this.areaWidth = areaWidth;
+		this.areaHeight = areaHeight;
+		this.numCols = numCols;
+		this.numRows = numRows;
+		x = new int[numCols * numRows];
+		y = new int[numCols * numRows];
+		width = new int[numCols * numRows];
+		height = new int[numCols * numRows];
+
+		//calculate the size of each rectangle
+		int locationWidth = (areaWidth - buffer) / numCols;
+		int locationHeight = (areaHeight - buffer) / numRows;
+		this.buffer = buffer;
+		pitchX = locationWidth + buffer;
+		pitchY = locationHeight + buffer;
+
+		for(int c = 0; c < numCols; c++) {
+			for(int r = 0; r < numRows; r++) {
+				int id = getId(c, r);
+				x[id] = c * (locationWidth + buffer) + areaX;
+				y[id] = r * (locationHeight + buffer) + areaY;
+				width[id] = locationWidth;
+				height[id] = locationHeight;
+			}
+		}
+	}
+
+	public int getAreaX() {
+		return areaX;
+	}
+
+	public int getAreaY() {
+		return areaY;
+	}
+
+	public int getAreaWidth() {
+		return areaWidth;
+	}
+
+	public int getAreaHeight() {
+		return areaHeight;
+	}
+
+	public boolean isTorus() {
+		return torus;
+	}
+
+	//<x> brought back inside the world, if it's a torus
+	public int wrapX(int x) {
+		return torus ? Math.floorMod(x - areaX, areaWidth) + areaX : x;
+	}
+
+	//<y> brought back inside the world, if it's a torus
+	public int wrapY(int y) {
+		return torus ? Math.floorMod(y - areaY, areaHeight) + areaY : y;
+	}
+
+	//how far right of <b> <a> is - the short way around, if the world is a torus
+	public int differenceX(int a, int b) {
+		int difference = a - b;
+		if(torus) {
+			if(difference > areaWidth / 2) difference -= areaWidth;
+			else if(difference < -areaWidth / 2) difference += areaWidth;
+		}
+		return difference;
+	}
+
+	//how far below <b> <a> is - the short way around, if the world is a torus
+	public int differenceY(int a, int b) {
+		int difference = a - b;
+		if(torus) {
+			if(difference > areaHeight / 2) difference -= areaHeight;
+			else if(difference < -areaHeight / 2) difference += areaHeight;
+		}
+		return difference;
+	}
+
+	/*
+	 * Every spot in the world belongs to the location nearest it: the space between two locations is split down the
+	 * middle, and the space around the outside goes to the locations along the edge.  Column <col> has everything from
+	 * getColumnStart(col) up to getColumnStart(col + 1), and the first and last columns go on forever.  Rows are the same
+	 */
+
+	public int getNearestColumn(int px) {
+		return Math.max(0, Math.min(numCols - 1, Math.floorDiv(px - areaX + buffer / 2, pitchX)));
+	}
+
+	public int getNearestRow(int py) {
+		return Math.max(0, Math.min(numRows - 1, Math.floorDiv(py - areaY + buffer / 2, pitchY)));
+	}
+
+	public int getColumnStart(int col) {
+		if(col <= 0) return Integer.MIN_VALUE;
+		if(col >= numCols) return Integer.MAX_VALUE;
+		return areaX + col * pitchX - buffer / 2;
+	}
+
+	public int getRowStart(int row) {
+		if(row <= 0) return Integer.MIN_VALUE;
+		if(row >= numRows) return Integer.MAX_VALUE;
+		return areaY + row * pitchY - buffer / 2;
+	}
+
+	public int getId(int col, int row) {
+		return col * numRows + row;
+	}
+
+	public int getNumLocations() {
+		return x.length;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getX(int id) {
+		return x[id];
+	}
+
+	public int getY(int id) {
+		return y[id];
+	}
+
+	public int getWidth(int id) {
+		return width[id];
+	}
+
+	public int getHeight(int id) {
+		return height[id];
+	}
+
+	/**
+	 * Is the rectangle at px, py with the given size completely inside location <id>?
+	 * Same as java.awt.Rectangle.contains(Rectangle)
+	 */
+	public boolean contains(int id, int px, int py, int pWidth, int pHeight) {
+		return px >= x[id] && py >= y[id]
+				&& px + pWidth <= x[id] + width[id]
+				&& py + pHeight <= y[id] + height[id];
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Gets told about every step a SimulationEngine runs, with how long each phase took and what happened.
+ * Called on the thread that ran the step, right after it finishes, so it should be quick.
+ * While no listeners are added, the engine doesn't measure anything.
+ *
+ */
+public interface MetricsListener {
+
+	/**
+	 * Step metrics.getStep() just finished.  <metrics> is reused for the next step, so copy anything worth keeping
+	 */
+	public void stepFinished(SimulationEngine engine, StepMetrics metrics);
+}
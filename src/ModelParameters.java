@@ -0,0 +1,183 @@
+import java.util.Random;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Holds all the values needed to set up and run one simulation.
+ * Used by the SimulationEngine, so a run does not need any of the windows to exist.
+ *
+ */
+public class ModelParameters {
+
+	//the ways the population can be stored
+	public static final int OBJECT_STORE = 0;
+	public static final int ARRAY_STORE = 1;
+	public static final int OFF_HEAP_STORE = 2;
+	public static final int MAPPED_STORE = 3;
+
+	//the ways a run can be solved - moving every person, or just following the counts with a CompartmentModel
+	public static final int AGENT_SOLVER = 0;
+	public static final int ODE_SOLVER = 1;
+	public static final int GILLESPIE_SOLVER = 2;
+	public static final int TAU_LEAP_SOLVER = 3;
+
+	//what happens at the edges of the world
+	public static final int WALLS = 0;
+	public static final int TORUS = 1;
+
+	//Disease variables
+	public double alpha;
+	public double beta;
+	public boolean useSIR;
+	public int recoveryDelay;
+
+	//population variables
+	public int initTotalPeople;
+	public int initNumInfectives;
+	public int numTimesteps;
+	public boolean moveAwayFromInfectives;
+
+	//location variables
+	public boolean useLocations;
+	public boolean allInfectivesInSameLoc;
+	public int numLocationCols;
+	public int numLocationRows;
+	public double changeLocationProb;
+
+	//how big the world is, and whether its edges are walls or wrap around - only without locations.
+	//The same size as the DiseaseModel window's screen unless asked otherwise
+	public int worldWidth = SimulationEngine.ARENA_WIDTH;
+	public int worldHeight = SimulationEngine.ARENA_HEIGHT;
+	public int boundary = WALLS;
+
+	//how the engine stores the people - Person objects unless asked otherwise.  The off heap stores are for runs too
+	//big for the heap, see OffHeapPopulation
+	public int populationStore = OBJECT_STORE;
+
+	//the seed for all the random numbers in a run - a random one unless asked otherwise
+	//the same seed always gives the same run
+	public long seed = new Random().nextLong();
+
+	//0 runs each step on the calling thread.  1 or more splits each step into tiles and runs them on that many threads.
+	//Either way the results for a given seed are exactly the same
+	public int threads = 0;
+
+	//only check for collisions in grid cells next to someone who was infective at the start of the step.
+	//Nobody else can be infected, so the results are exactly the same - it's just faster when infectives are few
+	public boolean activeSet = false;
+
+	//with locations, give each location its own share of the people and its own grids, and step the locations on
+	//threads (this many, or one per location up to the number of cores if threads is 0).  Exactly the same results
+	//again - see ShardedStepper
+	public boolean shardByLocation = false;
+
+	//stop early once nobody is infective, or once the totals have stayed within steadyStateTolerance (a fraction of everyone)
+	//for steadyStateWindow timesteps - a window of 0 never stops for that.  See StopConditions
+	public boolean stopWhenNoInfectives = false;
+	public int steadyStateWindow = 0;
+	public double steadyStateTolerance = 0;
+
+	//keep the totals and incidence of every timestep in memory.  Runs that write every step out as they go, with a
+	//TrajectoryOutput, can turn this off to keep just the last steadyStateWindow timesteps, which is all the stop
+	//conditions look back at
+	public boolean keepAllTotals = true;
+
+	//how the run is solved - the SimulationEngine unless asked otherwise
+	public int solver = AGENT_SOLVER;
+
+	//for the CompartmentModel, how many infections one infective causes per timestep among nobody but susceptibles.
+	//0 works it out from alpha, see ContactCalibration
+	public double contactRate = 0;
+
+	/**
+	 * Basic Constructor - takes the same values as the DiseaseModel
+	 */
+	public ModelParameters(double alpha, double beta, boolean useSIR, int recoveryDelay, int initTotalPeople, int initNumInfectives, int numTimesteps, boolean moveAwayFromInfectives, boolean useLocations, boolean allInfectivesInSameLoc, int numLocationCols, int numLocationRows, double changeLocationProb) {
+		this.alpha = alpha;
+		this.beta = beta;
+		this.useSIR = useSIR;
+		this.recoveryDelay = recoveryDelay;
+		this.initTotalPeople = initTotalPeople;
+		this.initNumInfectives = initNumInfectives;
+		this.numTimesteps = numTimesteps;
+		this.moveAwayFromInfectives = moveAwayFromInfectives;
+		this.useLocations = useLocations;
+		this.allInfectivesInSameLoc = allInfectivesInSameLoc;
+		this.numLocationCols = numLocationCols;
+		this.numLocationRows = numLocationRows;
+		this.changeLocationProb = changeLocationProb;
+	}
+
+	/**
+	 * @return a separate copy of these parameters, so one run's values can be changed without touching another's
+	 */
+	public ModelParameters copy() {
+		ModelParameters copy = new ModelParameters(alpha, beta, useSIR, recoveryDelay, initTotalPeople, initNumInfectives, numTimesteps, moveAwayFromInfectives, useLocations, allInfectivesInSameLoc, numLocationCols, numLocationRows, changeLocationProb);
+		copy.worldWidth = worldWidth;
+		copy.worldHeight = worldHeight;
+		copy.boundary = boundary;
+		copy.populationStore = populationStore;
+		copy.seed = seed;
+		copy.threads = threads;
+		copy.activeSet = activeSet;
+		copy.shardByLocation = shardByLocation;
+		copy.stopWhenNoInfectives = stopWhenNoInfectives;
+		copy.steadyStateWindow = steadyStateWindow;
+		copy.steadyStateTolerance = steadyStateTolerance;
+		copy.keepAllTotals = keepAllTotals;
+		copy.solver = solver;
+		copy.contactRate = contactRate;
+		return copy;
+	}
+
+	/**
+	 * Turn how long the disease lasts into the chance of recovering each timestep
+	 * A length of 0 (or less) means people never recover
+	 */
+	public static double betaFromDiseaseLength(int diseaseLength) {
+		if(diseaseLength <= 0)
+			return 0;
+		return 1.0 / diseaseLength;
+	}
+
+	/**
+	 * Check the values - the model can't run with negative people or probabilities outside of [0, 1]
+	 */
+	public boolean isValid() {
+		if(alpha > 1.0 || alpha < 0.0
+				|| beta > 1.0 || beta < 0.0
+				|| recoveryDelay < 0
+				|| initTotalPeople < 0
+				|| initNumInfectives < 0 || initNumInfectives > initTotalPeople
+				|| numTimesteps < 0) {
+			return false;
+		}
+		if(useLocations && (numLocationCols <= 0 || numLocationRows <= 0)) {
+			return false;
+		}
+		//everyone has to fit inside their location, and only a world without locations can wrap around
+		int locationWidth = useLocations ? (worldWidth - LocationGrid.LOCATION_BUFFER_WIDTH) / numLocationCols : worldWidth;
+		int locationHeight = useLocations ? (worldHeight - LocationGrid.LOCATION_BUFFER_WIDTH) / numLocationRows : worldHeight;
+		if(locationWidth <= Person.WIDTH || locationHeight <= Person.HEIGHT) {
+			return false;
+		}
+		if(boundary != WALLS && (boundary != TORUS || useLocations)) {
+			return false;
+		}
+		if(shardByLocation && !useLocations) {
+			return false;
+		}
+		if(populationStore < OBJECT_STORE || populationStore > MAPPED_STORE) {
+			return false;
+		}
+		if(threads < 0) {
+			return false;
+		}
+		if(steadyStateWindow < 0 || steadyStateTolerance < 0) {
+			return false;
+		}
+		if(solver < AGENT_SOLVER || solver > TAU_LEAP_SOLVER || contactRate < 0) {
+			return false;
+		}
+		return true;
+	}
+}
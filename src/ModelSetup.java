@@ -81,6 +81,7 @@ public class ModelSetup extends JFrame implements PropertyChangeListener, ItemLi
 	private static String stopModelString = "Stop Model";
 	private static String pauseModelString = "Pause Model   ";
 	private static String unPauseModelString = "Un-Pause Model";
+	private static String stepModelString = "Step";
 	
 	//Fields for variable entry
 	private JFormattedTextField alphaField;
@@ -114,6 +115,7 @@ public class ModelSetup extends JFrame implements PropertyChangeListener, ItemLi
 	private JButton startModelButton;
 	private JButton stopModelButton;
 	private JButton pauseModelButton;
+	private JButton stepModelButton;
 	
 	public ModelSetup() {
 		super("Model Setup");
@@ -272,11 +274,18 @@ public class ModelSetup extends JFrame implements PropertyChangeListener, ItemLi
 		pauseModelButton = new JButton(pauseModelString);
 		pauseModelButton.addActionListener(this);
 		
+		stepModelButton = new JButton(stepModelString);
+		stepModelButton.addActionListener(this);
+		
+		//there's nothing to stop, pause or step until a model has been started
+		setModelButtonsEnabled(false);
+		
 		//make a pannel for the buttons
 		JPanel buttonsPane = new JPanel(new GridLayout(1,0));
 		buttonsPane.add(startModelButton);
 //		buttonsPane.add(stopModelButton);
 		buttonsPane.add(pauseModelButton);
+		buttonsPane.add(stepModelButton);
 		
 		//add the variables pane on top, the button below a divider
 		add(variablesPane, BorderLayout.NORTH);
@@ -400,13 +409,12 @@ public class ModelSetup extends JFrame implements PropertyChangeListener, ItemLi
 					
 					//make a new one
 					//handle diseaseLengths of 0 aka no beta
-					double beta;
-					if(diseaseLength <= 0) 	beta = 0;
-					else beta = 1.0/diseaseLength;
+					double beta = ModelParameters.betaFromDiseaseLength(diseaseLength);
 					
 					model = new DiseaseModel(alpha, beta, useSIR, recoveryTime, population, (int)(population*startInfectivesPercent), timesteps, avoidInfectives, useLocations, allInfectivesInSameLoc, numLocCols, numLocRows, changeLocProb);
 					model.setLocation((int)getLocation().getX()+getWidth(), (int)getLocation().getY());
 					model.setVisible(true);
+					setModelButtonsEnabled(true);
 					new Thread(new Runnable() {
 						public void run() {
 							model.runModel();
@@ -421,6 +429,10 @@ public class ModelSetup extends JFrame implements PropertyChangeListener, ItemLi
 				}
 			});
 		}
+		//the buttons below are only enabled once there's a model, but a click can still be queued before that
+		if(model == null) {
+			return;
+		}
 		if(e.getSource() == stopModelButton) {
 			model.stopModel();
 		}
@@ -432,9 +444,21 @@ public class ModelSetup extends JFrame implements PropertyChangeListener, ItemLi
 				pauseModelButton.setText(pauseModelString);
 			}
 		}
+		if(e.getSource() == stepModelButton) {
+			//run one step, and leave the model paused afterwards
+			model.stepModel(1);
+			pauseModelButton.setText(unPauseModelString);
+		}
 	}
 	
 	
+	//turn the buttons that act on a running model on or off
+	private void setModelButtonsEnabled(boolean enabled) {
+		stopModelButton.setEnabled(enabled);
+		pauseModelButton.setEnabled(enabled);
+		stepModelButton.setEnabled(enabled);
+	}
+	
 	//sets up the NumberFormats
 	private void setUpFormats(){
 //		alphaFormat = NumberFormat.getNumberInstance();
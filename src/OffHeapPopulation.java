@@ -0,0 +1,199 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * A Population kept outside the Java heap, as one fixed-width record per person:
+ *
+ *   x, y, previous x, previous y, immunity counter (ints), location id (short), type, previous type (bytes)
+ *
+ * 24 bytes a person, the same as an ArrayPopulation, but the garbage collector never has to look at any of it, so a
+ * run of a hundred million people doesn't need a huge heap and never stops for a long collection.  The engine keeps
+ * its grids and everyone's nearest infective the same way, in IntColumns - another 28 bytes a person, off the heap -
+ * so what's left on the heap grows with the size of the world, not the number of people.  A ShardedStepper's
+ * per-location lists and grids are still on the heap.
+ * The records are either allocated directly (java needs -XX:MaxDirectMemorySize to be big enough for them), or mapped
+ * from a scratch file, so the operating system can page people out to disk when they don't all fit in memory.
+ *
+ * Records are in chunks of a few million people, each its own buffer, since a buffer can't be more than 2GB.
+ *
+ */
+public class OffHeapPopulation extends Population {
+
+	//where each field is in a record
+	private static final int X = 0;
+	private static final int Y = 4;
+	private static final int PREVIOUS_X = 8;
+	private static final int PREVIOUS_Y = 12;
+	private static final int IMMUNITY_COUNTER = 16;
+	private static final int LOCATION_ID = 20;
+	private static final int STATE = 22;
+	private static final int PREVIOUS_STATE = 23;
+	private static final int RECORD_BYTES = 24;
+
+	//people per chunk is a power of 2, so finding a person's chunk is a shift
+	private static final int CHUNK_SHIFT = 22;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	private int size;
+	private int capacity;
+	private ByteBuffer[] chunks;
+
+	/**
+	 * Room for <capacity> people in directly allocated memory
+	 */
+	public OffHeapPopulation(LocationGrid locations, int capacity) {
+		super(locations);
+		checkLocations(locations);
+		this.capacity = capacity;
+		chunks = new ByteBuffer[numChunks(capacity)];
+		for(int c = 0; c < chunks.length; c++) {
+			chunks[c] = ByteBuffer.allocateDirect(chunkBytes(capacity, c)).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/**
+	 * Room for <capacity> people mapped from <file>, which is made as big as that needs.  Whatever was in it is lost
+	 */
+	public OffHeapPopulation(LocationGrid locations, int capacity, File file) throws IOException {
+		super(locations);
+		checkLocations(locations);
+		this.capacity = capacity;
+		chunks = new ByteBuffer[numChunks(capacity)];
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength((long) capacity * RECORD_BYTES);
+			FileChannel channel = raf.getChannel();
+			for(int c = 0; c < chunks.length; c++) {
+				long start = ((long) c << CHUNK_SHIFT) * RECORD_BYTES;
+				chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, start, chunkBytes(capacity, c)).order(ByteOrder.nativeOrder());
+			}
+		} finally {
+			//the mappings stay good after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return room for <capacity> people mapped from a scratch file that goes away when they do
+	 */
+	public static OffHeapPopulation mapped(LocationGrid locations, int capacity) throws IOException {
+		File file = File.createTempFile("population", ".records");
+		try {
+			return new OffHeapPopulation(locations, capacity, file);
+		} finally {
+			//the mappings keep the space until they're collected, where the file system allows deleting a mapped file
+			if(!file.delete())
+				file.deleteOnExit();
+		}
+	}
+
+	private static void checkLocations(LocationGrid locations) {
+		if(locations.getNumLocations() > Short.MAX_VALUE + 1)
+			throw new IllegalArgumentException("too many locations for an OffHeapPopulation: " + locations.getNumLocations());
+	}
+
+	private static int numChunks(int capacity) {
+		return (int) (((long) capacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+	}
+
+	//how many bytes chunk <c> needs, for <capacity> people
+	private static int chunkBytes(int capacity, int c) {
+		return Math.min(CHUNK_MASK + 1, capacity - (c << CHUNK_SHIFT)) * RECORD_BYTES;
+	}
+
+	//the chunk person <i> is in
+	private ByteBuffer chunk(int i) {
+		return chunks[i >>> CHUNK_SHIFT];
+	}
+
+	//where person <i>'s record starts in their chunk
+	private static int offset(int i) {
+		return (i & CHUNK_MASK) * RECORD_BYTES;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int add(int startX, int startY, int type, int startLocationId) {
+		if(size == capacity)
+			throw new IllegalStateException("the population is full");
+		int i = size++;
+		ByteBuffer chunk = chunk(i);
+		int at = offset(i);
+		chunk.putInt(at + X, startX);
+		chunk.putInt(at + Y, startY);
+		chunk.putInt(at + PREVIOUS_X, startX);
+		chunk.putInt(at + PREVIOUS_Y, startY);
+		chunk.putInt(at + IMMUNITY_COUNTER, 0);
+		chunk.putShort(at + LOCATION_ID, (short) startLocationId);
+		chunk.put(at + STATE, (byte) type);
+		chunk.put(at + PREVIOUS_STATE, (byte) type);
+		return i;
+	}
+
+	public int getX(int i) {
+		return chunk(i).getInt(offset(i) + X);
+	}
+
+	public int getY(int i) {
+		return chunk(i).getInt(offset(i) + Y);
+	}
+
+	public void setPosition(int i, int newX, int newY) {
+		ByteBuffer chunk = chunk(i);
+		int at = offset(i);
+		chunk.putInt(at + X, newX);
+		chunk.putInt(at + Y, newY);
+	}
+
+	public int getType(int i) {
+		return chunk(i).get(offset(i) + STATE);
+	}
+
+	public void setType(int i, int type) {
+		chunk(i).put(offset(i) + STATE, (byte) type);
+	}
+
+	public int getPreviousX(int i) {
+		return chunk(i).getInt(offset(i) + PREVIOUS_X);
+	}
+
+	public int getPreviousY(int i) {
+		return chunk(i).getInt(offset(i) + PREVIOUS_Y);
+	}
+
+	public int getPreviousType(int i) {
+		return chunk(i).get(offset(i) + PREVIOUS_STATE);
+	}
+
+	public void savePrevious(int i) {
+		ByteBuffer chunk = chunk(i);
+		int at = offset(i);
+		chunk.putInt(at + PREVIOUS_X, chunk.getInt(at + X));
+		chunk.putInt(at + PREVIOUS_Y, chunk.getInt(at + Y));
+		chunk.put(at + PREVIOUS_STATE, chunk.get(at + STATE));
+	}
+
+	public int getImmunityCounter(int i) {
+		return chunk(i).getInt(offset(i) + IMMUNITY_COUNTER);
+	}
+
+	public void setImmunityCounter(int i, int count) {
+		chunk(i).putInt(offset(i) + IMMUNITY_COUNTER, count);
+	}
+
+	public int getLocationId(int i) {
+		return chunk(i).getShort(offset(i) + LOCATION_ID);
+	}
+
+	public void setLocationId(int i, int newLocationId) {
+		chunk(i).putShort(offset(i) + LOCATION_ID, (short) newLocationId);
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Estimates one quantile of a stream of values in constant space, with the P-squared algorithm
+ * (Jain and Chlamtac, 1985).  Five markers track the minimum, the maximum, the quantile and the points halfway to it,
+ * and get nudged along a parabola as values come in.
+ * Exact for the first five values, and very close after that for anything reasonably smooth.
+ *
+ */
+public class P2Quantile {
+
+	private double p;
+	private int count;
+
+	//marker heights, actual positions, desired positions and how much the desired positions move per value
+	private double[] heights = new double[5];
+	private double[] positions = new double[5];
+	private double[] desired = new double[5];
+	private double[] increments = new double[5];
+
+	/**
+	 * Estimate the <p> quantile - .5 is the median
+	 */
+	public P2Quantile(double p) {
+		if(p < 0 || p > 1)
+			throw new IllegalArgumentException("quantile should be between 0 and 1, not " + p);
+		this.p = p;
+		for(int i = 0; i < 5; i++) {
+			positions[i] = i + 1;
+		}
+		desired[0] = 1;
+		desired[1] = 1 + 2 * p;
+		desired[2] = 1 + 4 * p;
+		desired[3] = 3 + 2 * p;
+		desired[4] = 5;
+		increments[0] = 0;
+		increments[1] = p / 2;
+		increments[2] = p;
+		increments[3] = (1 + p) / 2;
+		increments[4] = 1;
+	}
+
+	public void add(double value) {
+		//keep the first five values, sorted, as the markers
+		if(count < 5) {
+			heights[count++] = value;
+			if(count == 5)
+				Arrays.sort(heights);
+			return;
+		}
+		count++;
+
+		//find the cell the value falls in, stretching the ends if needbe
+		int k;
+		if(value < heights[0]) {
+			heights[0] = value;
+			k = 0;
+		} else if(value >= heights[4]) {
+			heights[4] = Math.max(heights[4], value);
+			k = 3;
+		} else {
+			k = 0;
+			while(value >= heights[k + 1]) k++;
+		}
+
+		for(int i = k + 1; i < 5; i++) {
+			positions[i]++;
+		}
+		for(int i = 0; i < 5; i++) {
+			desired[i] += increments[i];
+		}
+
+		//move the middle markers toward where they should be, if they're a position or more off
+		for(int i = 1; i < 4; i++) {
+			double d = desired[i] - positions[i];
+			if((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+				int sign = d > 0 ? 1 : -1;
+				double height = parabolic(i, sign);
+				if(heights[i - 1] < height && height < heights[i + 1])
+					heights[i] = height;
+				else
+					heights[i] = linear(i, sign);
+				positions[i] += sign;
+			}
+		}
+	}
+
+	private double parabolic(int i, int sign) {
+		return heights[i] + sign / (positions[i + 1] - positions[i - 1])
+				* ((positions[i] - positions[i - 1] + sign) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+				+ (positions[i + 1] - positions[i] - sign) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+	}
+
+	private double linear(int i, int sign) {
+		return heights[i] + sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+	}
+
+	/**
+	 * @return the estimate so far - NaN if there haven't been any values
+	 */
+	public double getQuantile() {
+		if(count == 0)
+			return Double.NaN;
+		if(count < 5) {
+			//few enough to just sort and pick
+			double[] sorted = Arrays.copyOf(heights, count);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.min(count - 1, Math.round(p * (count - 1)))];
+		}
+		return heights[2];
+	}
+
+	public double getP() {
+		return p;
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs the steps of a SimulationEngine on several threads.
+ * The collision grid is cut into square tiles of cells, and each tile looks after the people in its cells.
+ * A step runs in phases - prepare, nearest infectives, move and recover, collisions - and every phase
+ * finishes for every tile before the next one starts.
+ *
+ * The results only depend on the seed, never on the number of threads or which tile runs first:
+ * - every person's random numbers come from their own stream, picked by the step, the phase and the person
+ * - people run from where infectives were at the start of the step
+ * - the grid is only updated between phases, one person at a time in index order
+ * - collisions only change the person being checked, using draws keyed by the pair,
+ *   so a collision across two tiles comes out the same from either side
+ * - each tile counts its own changes of type and location, and they're added up after the last phase
+ * That is also how the single threaded step works, so the two give the same results.
+ *
+ */
+public class ParallelStepper implements Stepper {
+
+	//the phases of a step
+	private static final int PHASE_PREPARE = 1;
+	private static final int PHASE_NEAREST = 2;
+	private static final int PHASE_MOVE = 3;
+	private static final int PHASE_COLLIDE = 4;
+
+	//aim for a few tiles per thread, so the work evens out
+	private static final int TILES_PER_THREAD = 4;
+
+	private SimulationEngine engine;
+	private ForkJoinPool pool;
+	private Tile[] tiles;
+
+	//runs every tile at once
+	private RecursiveAction allTiles = new RecursiveAction() {
+		private static final long serialVersionUID = 1L;
+		protected void compute() {
+			ForkJoinTask.invokeAll(tiles);
+		}
+	};
+
+	//what the tiles should do when they are run next
+	private int phase;
+	private int step;
+	private boolean counting;
+
+	public ParallelStepper(SimulationEngine engine, int threads) {
+		this.engine = engine;
+		pool = new ForkJoinPool(threads);
+
+		//find a square tile size that gives about TILES_PER_THREAD tiles per thread
+		SpatialGrid grid = engine.getGrid();
+		int numCells = grid.getNumCols() * grid.getNumRows();
+		int tileSize = (int) Math.max(1, Math.floor(Math.sqrt((double) numCells / (threads * TILES_PER_THREAD))));
+		int tileCols = (grid.getNumCols() + tileSize - 1) / tileSize;
+		int tileRows = (grid.getNumRows() + tileSize - 1) / tileSize;
+
+		tiles = new Tile[tileCols * tileRows];
+		for(int c = 0; c < tileCols; c++) {
+			for(int r = 0; r < tileRows; r++) {
+				tiles[c * tileRows + r] = new Tile(c * tileSize, Math.min(grid.getNumCols(), (c + 1) * tileSize),
+						r * tileSize, Math.min(grid.getNumRows(), (r + 1) * tileSize), engine.getRandomStreams().newGenerator());
+			}
+		}
+	}
+
+	/**
+	 * Run everything but the census for step <step>, timing and counting it in <metrics> unless that's null
+	 */
+	public void step(int step, StepMetrics metrics) {
+		this.step = step;
+		this.counting = metrics != null;
+		long time = metrics == null ? 0 : System.nanoTime();
+		runPhase(PHASE_PREPARE);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.PREPARE, time);
+
+		engine.buildInfectiveGrid();
+		if(metrics != null) time = metrics.endPhase(StepMetrics.INFECTIVE_GRID, time);
+		if(engine.getParameters().moveAwayFromInfectives)
+			runPhase(PHASE_NEAREST);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.NEAREST, time);
+
+		runPhase(PHASE_MOVE);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.MOVE, time);
+		engine.updateGrid();
+		engine.markActiveCells();
+		if(metrics != null) time = metrics.endPhase(StepMetrics.GRID, time);
+
+		runPhase(PHASE_COLLIDE);
+
+		//add up the tiles' changes to the counts, now that no tile is running
+		for(Tile tile : tiles) {
+			engine.getCounters().addChanges(tile.changes);
+		}
+		if(metrics != null) {
+			metrics.endPhase(StepMetrics.COLLIDE, time);
+			for(Tile tile : tiles) {
+				metrics.addCounts(tile.counts);
+			}
+		}
+	}
+
+	//run <phase> on every tile, and wait for all of them to finish
+	//the tasks are reused every phase, so a step doesn't make any new objects
+	private void runPhase(int phase) {
+		this.phase = phase;
+		for(Tile tile : tiles) {
+			tile.reinitialize();
+		}
+		allTiles.reinitialize();
+		pool.invoke(allTiles);
+	}
+
+	/**
+	 * Stop the threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/*
+	 * A block of grid cells, and the generator for the people in them
+	 */
+	private class Tile extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int firstCol, endCol, firstRow, endRow;
+		private StreamRandom rng;
+
+		//this tile's share of the collision counts, when they're being counted
+		private StepMetrics counts = new StepMetrics();
+
+		//the changes of type and location this tile's people made this step
+		private CompartmentCounters changes = new CompartmentCounters(engine.getLocations().getNumLocations());
+
+		Tile(int firstCol, int endCol, int firstRow, int endRow, StreamRandom rng) {
+			this.firstCol = firstCol;
+			this.endCol = endCol;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+			this.rng = rng;
+		}
+
+		protected void compute() {
+			SpatialGrid grid = engine.getGrid();
+			StepMetrics tileCounts = null;
+			if(counting && phase == PHASE_COLLIDE) {
+				tileCounts = counts;
+				tileCounts.clearCounts();
+			}
+			for(int c = firstCol; c < endCol; c++) {
+				for(int r = firstRow; r < endRow; r++) {
+					if(phase == PHASE_COLLIDE && !engine.isActiveCell(c, r))
+						continue;
+					for(int i = grid.first(c, r); i != SpatialGrid.NONE; i = grid.next(i)) {
+						switch(phase) {
+						case PHASE_PREPARE:
+							rng.select(step, RandomStreams.PHASE_PREPARE, i);
+							engine.prepare(i, rng, changes);
+							break;
+						case PHASE_NEAREST:
+							engine.findNearestInfectiveFor(i);
+							break;
+						case PHASE_MOVE:
+							rng.select(step, RandomStreams.PHASE_MOVE, i);
+							engine.moveAndRecover(i, rng, changes);
+							break;
+						case PHASE_COLLIDE:
+							engine.checkCollisions(i, step, rng, changes, tileCounts);
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Reads ModelParameters from a plain key=value file, so runs can be set up without the ModelSetup window.
+ * The keys are the same things ModelSetup asks for, and anything left out gets the same default ModelSetup starts with:
+ *
+ *   alpha=.0002                  chance a collision with an infective makes someone sick
+ *   diseaseLength=0              how long people stay sick - 0 means forever
+ *   beta=                        the chance of recovering each timestep, instead of diseaseLength
+ *   population=1000
+ *   startInfectivesPercent=.05   as a fraction of the population, so .05 is 5%
+ *   timesteps=300
+ *   useSIR=false
+ *   recoveryTime=0               how long recovered people stay immune - 0 means forever
+ *   avoidInfectives=false
+ *   useLocations=false
+ *   allInfectivesInSameLoc=true
+ *   numLocCols=2
+ *   numLocRows=2
+ *   changeLocProb=.0002
+ *   worldWidth=500               the size of the world - people are 7 across, and the window shows it scaled to fit
+ *   worldHeight=515
+ *   boundary=walls               walls, or torus for a world without locations that wraps around at the edges
+ *
+ * and a few that only make sense outside the window:
+ *
+ *   seed=<a random one>
+ *   threads=0                    see ModelParameters.threads
+ *   store=objects                objects, arrays, offheap or mapped, see ModelParameters.populationStore
+ *   activeSet=false              see ModelParameters.activeSet
+ *   shardLocations=false         see ModelParameters.shardByLocation
+ *   stopWhenNoInfectives=false   stop the run early once nobody is infective
+ *   steadyStateWindow=0          stop the run early once the totals have stayed within steadyStateTolerance
+ *   steadyStateTolerance=0       (a fraction of everyone) for this many timesteps - 0 never does
+ *   solver=agents                agents, or ode, gillespie or tauleap for a CompartmentModel
+ *   contactRate=0                the CompartmentModel's contact rate - 0 works it out from alpha
+ *
+ */
+public class ParameterFile {
+
+	//every key we know about, so typos don't get silently ignored
+	public static final String[] KEYS = {"alpha", "diseaseLength", "beta", "population", "startInfectivesPercent", "timesteps",
+		"useSIR", "recoveryTime", "avoidInfectives", "useLocations", "allInfectivesInSameLoc", "numLocCols", "numLocRows",
+		"changeLocProb", "worldWidth", "worldHeight", "boundary", "seed", "threads", "store", "activeSet", "shardLocations",
+		"stopWhenNoInfectives", "steadyStateWindow", "steadyStateTolerance", "solver", "contactRate"};
+
+	/**
+	 * Read the parameters in <file>
+	 * @throws IllegalArgumentException if a value can't be read, a key isn't known or the parameters aren't valid
+	 */
+	public static ModelParameters read(File file) throws IOException {
+		return fromProperties(load(file));
+	}
+
+	/**
+	 * Read the keys and values in <file> without checking them, so they can be changed before use
+	 */
+	public static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		Reader reader = new FileReader(file);
+		try {
+			properties.load(reader);
+		} finally {
+			reader.close();
+		}
+		return properties;
+	}
+
+	/**
+	 * Turn <properties> into parameters, using the ModelSetup defaults for anything missing
+	 * @throws IllegalArgumentException if a value can't be read, a key isn't known or the parameters aren't valid
+	 */
+	public static ModelParameters fromProperties(Properties properties) {
+		for(String key : properties.stringPropertyNames()) {
+			if(!isKey(key))
+				throw new IllegalArgumentException("Unknown parameter " + key);
+		}
+
+		int population = getInt(properties, "population", 1000);
+		ModelParameters params = new ModelParameters(
+				getDouble(properties, "alpha", .0002),
+				getDouble(properties, "beta", ModelParameters.betaFromDiseaseLength(getInt(properties, "diseaseLength", 0))),
+				getBoolean(properties, "useSIR", false),
+				getInt(properties, "recoveryTime", 0),
+				population,
+				(int)(population * getDouble(properties, "startInfectivesPercent", .05)),
+				getInt(properties, "timesteps", 300),
+				getBoolean(properties, "avoidInfectives", false),
+				getBoolean(properties, "useLocations", false),
+				getBoolean(properties, "allInfectivesInSameLoc", true),
+				getInt(properties, "numLocCols", 2),
+				getInt(properties, "numLocRows", 2),
+				getDouble(properties, "changeLocProb", .0002));
+
+		params.worldWidth = getInt(properties, "worldWidth", SimulationEngine.ARENA_WIDTH);
+		params.worldHeight = getInt(properties, "worldHeight", SimulationEngine.ARENA_HEIGHT);
+		String boundary = properties.getProperty("boundary", "walls").trim();
+		if(boundary.equals("walls"))
+			params.boundary = ModelParameters.WALLS;
+		else if(boundary.equals("torus"))
+			params.boundary = ModelParameters.TORUS;
+		else
+			throw new IllegalArgumentException("boundary should be walls or torus, not " + boundary);
+
+		if(properties.getProperty("seed") != null)
+			params.seed = getLong(properties, "seed", 0);
+		params.threads = getInt(properties, "threads", 0);
+		params.activeSet = getBoolean(properties, "activeSet", false);
+		params.shardByLocation = getBoolean(properties, "shardLocations", false);
+		params.stopWhenNoInfectives = getBoolean(properties, "stopWhenNoInfectives", false);
+		params.steadyStateWindow = getInt(properties, "steadyStateWindow", 0);
+		params.steadyStateTolerance = getDouble(properties, "steadyStateTolerance", 0);
+
+		params.contactRate = getDouble(properties, "contactRate", 0);
+
+		String solver = properties.getProperty("solver", "agents").trim();
+		if(solver.equals("agents"))
+			params.solver = ModelParameters.AGENT_SOLVER;
+		else if(solver.equals("ode"))
+			params.solver = ModelParameters.ODE_SOLVER;
+		else if(solver.equals("gillespie"))
+			params.solver = ModelParameters.GILLESPIE_SOLVER;
+		else if(solver.equals("tauleap"))
+			params.solver = ModelParameters.TAU_LEAP_SOLVER;
+		else
+			throw new IllegalArgumentException("solver should be agents, ode, gillespie or tauleap, not " + solver);
+
+		String store = properties.getProperty("store", "objects").trim();
+		if(store.equals("objects"))
+			params.populationStore = ModelParameters.OBJECT_STORE;
+		else if(store.equals("arrays"))
+			params.populationStore = ModelParameters.ARRAY_STORE;
+		else if(store.equals("offheap"))
+			params.populationStore = ModelParameters.OFF_HEAP_STORE;
+		else if(store.equals("mapped"))
+			params.populationStore = ModelParameters.MAPPED_STORE;
+		else
+			throw new IllegalArgumentException("store should be objects, arrays, offheap or mapped, not " + store);
+
+		if(!params.isValid())
+			throw new IllegalArgumentException("INVALID ARGUMENTS");
+		return params;
+	}
+
+	/**
+	 * Set <key>=<value> in <properties>, from a command line argument
+	 * @throws IllegalArgumentException if <argument> isn't of the form key=value
+	 */
+	public static void override(Properties properties, String argument) {
+		int split = argument.indexOf('=');
+		if(split <= 0)
+			throw new IllegalArgumentException("Expected key=value, not " + argument);
+		properties.setProperty(argument.substring(0, split).trim(), argument.substring(split + 1).trim());
+	}
+
+	public static boolean isKey(String key) {
+		for(String known : KEYS) {
+			if(known.equals(key))
+				return true;
+		}
+		return false;
+	}
+
+	private static String get(Properties properties, String key) {
+		String value = properties.getProperty(key);
+		return value == null ? null : value.trim();
+	}
+
+	private static int getInt(Properties properties, String key, int defaultValue) {
+		String value = get(properties, key);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException(key + " should be a whole number, not " + value);
+		}
+	}
+
+	private static long getLong(Properties properties, String key, long defaultValue) {
+		String value = get(properties, key);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException(key + " should be a whole number, not " + value);
+		}
+	}
+
+	private static double getDouble(Properties properties, String key, double defaultValue) {
+		String value = get(properties, key);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException(key + " should be a number, not " + value);
+		}
+	}
+
+	private static boolean getBoolean(Properties properties, String key, boolean defaultValue) {
+		String value = get(properties, key);
+		if(value == null)
+			return defaultValue;
+		if(value.equalsIgnoreCase("true"))
+			return true;
+		if(value.equalsIgnoreCase("false"))
+			return false;
+		throw new IllegalArgumentException(key + " should be true or false, not " + value);
+	}
+}
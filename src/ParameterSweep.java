@@ -0,0 +1,207 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs every point of a SweepSpec, several at once, and writes one row per point to a results file.
+ *
+ * The points are split up as fork/join tasks, so threads that run out of points steal them from the others,
+ * which keeps every core busy even when some points (big populations, say) take much longer than others.
+ * Each point runs single threaded.  A sweep with solver=ode (or gillespie or tauleap) runs a CompartmentModel for each
+ * point instead of the agents, which is much quicker for screening a big range of values first.
+ *
+ * The results file is also the checkpoint: a row is written and flushed as soon as its point finishes,
+ * starting with the point's number.  Running the same sweep into the same file again skips every point that
+ * already has a row, so a killed sweep picks up where it left off.  Rows are in the order points finished.
+ *
+ *   java ParameterSweep sweep.properties results.csv
+ *
+ */
+public class ParameterSweep {
+
+	private SweepSpec spec;
+	private int threads;
+
+	//where finished rows go, and which points already have one
+	private Writer out;
+	private BitSet done = new BitSet();
+	private int numDone;
+
+	public ParameterSweep(SweepSpec spec, int threads) {
+		this.spec = spec;
+		this.threads = threads;
+	}
+
+	/**
+	 * Run every point that doesn't already have a row in <results>, adding their rows to it
+	 * @return how many points were run
+	 */
+	public int run(File results) throws IOException {
+		String header = header();
+		readCheckpoint(results, header);
+		int alreadyDone = numDone;
+
+		out = new BufferedWriter(new FileWriter(results, true));
+		try {
+			if(alreadyDone == 0 && results.length() == 0) {
+				out.write(header + "\n");
+				out.flush();
+			}
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				pool.invoke(new Points(0, spec.getNumPoints()));
+			} finally {
+				pool.shutdown();
+			}
+		} finally {
+			out.close();
+		}
+		return numDone - alreadyDone;
+	}
+
+	private String header() {
+		StringBuilder header = new StringBuilder("point");
+		for(String key : spec.getSweptKeys()) {
+			header.append(',').append(key);
+		}
+		return header.append(',').append(RunResult.HEADER).toString();
+	}
+
+	/*
+	 * Find the points <results> already has rows for.
+	 * A sweep killed part way through a row leaves half a line at the end, so keep only the whole rows
+	 */
+	private void readCheckpoint(File results, String header) throws IOException {
+		if(!results.exists() || results.length() == 0)
+			return;
+
+		int numColumns = header.split(",").length;
+		String contents = new String(Files.readAllBytes(results.toPath()), StandardCharsets.UTF_8);
+		String[] lines = contents.split("\n", -1);
+		if(!lines[0].equals(header))
+			throw new IllegalArgumentException(results + " has results for a different sweep");
+
+		File kept = new File(results.getPath() + ".tmp");
+		Writer keep = new BufferedWriter(new FileWriter(kept));
+		try {
+			keep.write(header + "\n");
+			//the last piece is whatever came after the last newline - empty, or half a row
+			for(int i = 1; i < lines.length - 1; i++) {
+				String[] columns = lines[i].split(",");
+				if(columns.length != numColumns)
+					continue;
+				int point;
+				try {
+					point = Integer.parseInt(columns[0]);
+				} catch(NumberFormatException e) {
+					continue;
+				}
+				if(point < 0 || point >= spec.getNumPoints() || done.get(point))
+					continue;
+				done.set(point);
+				numDone++;
+				keep.write(lines[i] + "\n");
+			}
+		} finally {
+			keep.close();
+		}
+		Files.move(kept.toPath(), results.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	//run point <point>, unless it's already done, and write its row
+	private void runPoint(int point) {
+		synchronized(this) {
+			if(done.get(point))
+				return;
+		}
+		ModelParameters params = spec.getParameters(point);
+		params.threads = 0;
+		long start = System.currentTimeMillis();
+		RunResult result;
+		if(params.solver == ModelParameters.AGENT_SOLVER) {
+			SimulationEngine engine = new SimulationEngine(params);
+			engine.run(params.numTimesteps);
+			engine.shutdown();
+			result = new RunResult(engine, System.currentTimeMillis() - start);
+		} else {
+			CompartmentModel model = new CompartmentModel(params);
+			model.run(params.numTimesteps);
+			result = new RunResult(model, System.currentTimeMillis() - start);
+		}
+
+		StringBuilder row = new StringBuilder().append(point);
+		for(String value : spec.getValues(point)) {
+			row.append(',').append(value);
+		}
+		row.append(',').append(result).append('\n');
+		synchronized(this) {
+			try {
+				out.write(row.toString());
+				out.flush();
+			} catch(IOException e) {
+				throw new RuntimeException("Couldn't write the result of point " + point, e);
+			}
+			done.set(point);
+			numDone++;
+		}
+	}
+
+	/*
+	 * A range of points - split in half until it's one point, so idle threads can steal the halves
+	 */
+	private class Points extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int first, end;
+
+		Points(int first, int end) {
+			this.first = first;
+			this.end = end;
+		}
+
+		protected void compute() {
+			if(end - first == 1) {
+				runPoint(first);
+			} else if(end - first > 1) {
+				int middle = (first + end) >>> 1;
+				invokeAll(new Points(first, middle), new Points(middle, end));
+			}
+		}
+	}
+
+	private static void usage() {
+		System.err.println("usage: java ParameterSweep <sweep file> <results csv>");
+		System.exit(1);
+	}
+
+	/**
+	 * @param args the sweep file and the results file - run it again with the same files to resume
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2)
+			usage();
+
+		SweepSpec spec = null;
+		try {
+			spec = SweepSpec.read(new File(args[0]));
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		ParameterSweep sweep = new ParameterSweep(spec, spec.getThreads());
+		int ran = sweep.run(new File(args[1]));
+		System.err.println("Ran " + ran + " of " + spec.getNumPoints() + " points on " + spec.getThreads() + " threads in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * A Population made of Person objects - the original way of storing people.
+ * Easy to look at and debug, but every person is a whole object.
+ *
+ */
+public class PersonPopulation extends Population {
+
+	//store all the people
+	private Person[] people;
+	private int size;
+
+	public PersonPopulation(LocationGrid locations, int capacity) {
+		super(locations);
+		people = new Person[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int add(int x, int y, int type, int locationId) {
+		if(size == people.length)
+			throw new IllegalStateException("the population is full");
+		int i = size++;
+		people[i] = new Person(x, y, type, locationId);
+		return i;
+	}
+
+	/**
+	 * @return person <i> itself
+	 */
+	public Person get(int i) {
+		return people[i];
+	}
+
+	public int getX(int i) {
+		return people[i].x;
+	}
+
+	public int getY(int i) {
+		return people[i].y;
+	}
+
+	public void setPosition(int i, int x, int y) {
+		people[i].setLocation(x, y);
+	}
+
+	public int getType(int i) {
+		return people[i].getType();
+	}
+
+	public void setType(int i, int type) {
+		people[i].setType(type);
+	}
+
+	public int getPreviousX(int i) {
+		return people[i].getPreviousX();
+	}
+
+	public int getPreviousY(int i) {
+		return people[i].getPreviousY();
+	}
+
+	public int getPreviousType(int i) {
+		return people[i].getPreviousType();
+	}
+
+	public void savePrevious(int i) {
+		people[i].savePrevious();
+	}
+
+	public int getImmunityCounter(int i) {
+		return people[i].getImmunityCounter();
+	}
+
+	public void setImmunityCounter(int i, int count) {
+		people[i].setImmunityCounter(count);
+	}
+
+	public int getLocationId(int i) {
+		return people[i].getLocationId();
+	}
+
+	public void setLocationId(int i, int locationId) {
+		people[i].setLocationId(locationId);
+	}
+}
@@ -0,0 +1,200 @@
+import java.util.Random;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Stores everyone in the model, and holds the rules for how they move, recover and get infected.
+ * People are looked up by index, so the same rules work however the people are actually stored -
+ * as Person objects, or as plain arrays for very big runs.
+ *
+ * Every person has a "previous" position and type, saved at the start of each step before anyone moves,
+ * that collisions, people running from infectives and the display use.
+ * The rules are handed the random number generator to use, so several threads can run them at once.
+ *
+ */
+public abstract class Population {
+
+	//marks "no person" wherever an index is expected
+	public static final int NONE = -1;
+
+	//the locations people are kept inside of
+	protected LocationGrid locations;
+
+	public Population(LocationGrid locations) {
+		this.locations = locations;
+	}
+
+	//how many people there are
+	public abstract int size();
+
+	/**
+	 * Add a new person at x, y of type <type> in location <locationId>
+	 * @return their index
+	 */
+	public abstract int add(int x, int y, int type, int locationId);
+
+	//current position and type
+	public abstract int getX(int i);
+	public abstract int getY(int i);
+	public abstract void setPosition(int i, int x, int y);
+	public abstract int getType(int i);
+	public abstract void setType(int i, int type);
+
+	//position and type from the start of the step, before anyone moved
+	public abstract int getPreviousX(int i);
+	public abstract int getPreviousY(int i);
+	public abstract int getPreviousType(int i);
+	public abstract void savePrevious(int i);
+
+	//counts down time until no longer immune
+	public abstract int getImmunityCounter(int i);
+	public abstract void setImmunityCounter(int i, int count);
+
+	//the id of the location this person needs to stay in
+	public abstract int getLocationId(int i);
+	public abstract void setLocationId(int i, int locationId);
+
+	//person <i>'s index in the whole population - just <i>, unless only some of the people are kept here
+	public int getId(int i) {
+		return i;
+	}
+
+	public LocationGrid getLocations() {
+		return locations;
+	}
+
+	/**
+	 * Move person <i> within their location if they are inside it, or to their location if they are outside of it
+	 * Passed the index of the nearest infective person - if NONE, ignore that behavior
+	 * People run from where the infective was at the start of the step, so it doesn't matter who moves first
+	 * On a torus everyone is always inside, and moving off one edge comes back in the other side
+	 */
+	public void move(int i, int nearestInfective, Random numGenerator) {
+		int loc = getLocationId(i);
+		int x = getX(i);
+		int y = getY(i);
+		boolean torus = locations.isTorus();
+
+		if(torus || locations.contains(loc, x, y, Person.WIDTH, Person.HEIGHT)) {
+			int xChange, yChange;
+			//we are inside the bounding location - move randomly or away from infectives
+			if(nearestInfective == NONE || getType(i) == Person.INFECTIVE) {
+				//randomly determine if we're going to move in the x and y, and try again if we wouldn't move at all
+				do {
+					double xRandomNum = numGenerator.nextDouble();
+					double yRandomNum = numGenerator.nextDouble();
+
+					if(xRandomNum < 1.0/3.0)  xChange = -Person.WIDTH;
+					else if (xRandomNum < 2.0/3.0) xChange = 0;
+					else xChange = Person.WIDTH;
+
+					if(yRandomNum < 1.0/3.0) yChange = -Person.HEIGHT;
+					else if (yRandomNum < 2.0 / 3.0) yChange = 0;
+					else yChange = Person.HEIGHT;
+				} while(xChange == 0 && yChange == 0);
+			} else {
+				//find difference in x and y direction and move by that amount.
+				int xDiff = locations.differenceX(x, getPreviousX(nearestInfective));
+				int yDiff = locations.differenceY(y, getPreviousY(nearestInfective));
+
+				if(xDiff < 0) xChange = -Person.WIDTH;
+				else if (xDiff == 0) xChange = 0;
+				else xChange = Person.WIDTH;
+
+				if(yDiff < 0) yChange = -Person.HEIGHT;
+				else if(yDiff == 0) yChange = 0;
+				else yChange = Person.HEIGHT;
+			}
+
+			//don't make the move if it would take us outside the bounding location
+			if(torus)
+				setPosition(i, locations.wrapX(x + xChange), locations.wrapY(y + yChange));
+			else if(locations.contains(loc, x + xChange, y + yChange, Person.WIDTH, Person.HEIGHT))
+				setPosition(i, x + xChange, y + yChange);
+		} else {
+			//we are not inside our bounding rectangle
+			//move toward the center of the bounding rectangle
+			int xDiff = (int) (x - (locations.getX(loc) + locations.getWidth(loc) / 2.0));
+			int yDiff = (int) (y - (locations.getY(loc) + locations.getHeight(loc) / 2.0));
+
+			//find the difference in x and y we need to move, and move that much
+			int xChange, yChange;
+
+			if(xDiff < 0) xChange = Person.WIDTH;
+			else if(xDiff == 0) xChange = 0;
+			else xChange = -Person.WIDTH;
+
+			if(yDiff < 0) yChange = Person.HEIGHT;
+			else if(yDiff == 0) yChange = 0;
+			else yChange = -Person.HEIGHT;
+
+			setPosition(i, x + xChange, y + yChange);
+		}
+	}
+
+	/**
+	 * Change person <i> to type <type>, counting the change in <counters> (unless it's null)
+	 * Every change of type should go through here, so the counts never need to be redone
+	 */
+	public void changeType(int i, int type, CompartmentCounters counters) {
+		if(counters != null)
+			counters.changeType(getLocationId(i), getType(i), type);
+		setType(i, type);
+	}
+
+	/**
+	 * Makes person <i> recover if they are infective, or lose immunity if they are recovered
+	 */
+	public void recover(int i, ModelParameters params, Random numGenerator, CompartmentCounters counters) {
+		if(getType(i) == Person.INFECTIVE)
+			getWellSoon(i, params, numGenerator, counters);
+		if(getType(i) == Person.RECOVERED)
+			getSickSoon(i, counters);
+	}
+
+	/**
+	 * Makes person <i> recover, if probability says they should
+	 */
+	public void getWellSoon(int i, ModelParameters params, Random numGenerator, CompartmentCounters counters) {
+		//For every move, the infective individual has a chance to recovery.
+		//Can be modified for SIS or SIR model.
+		if(getType(i) == Person.INFECTIVE) {
+			if(numGenerator.nextDouble() < params.beta) {
+				if(params.useSIR) {
+					changeType(i, Person.RECOVERED, counters);
+					//set immuntity counter to inifinty if no delay specified in the parameters
+					//otherwise use that delay
+					if(params.recoveryDelay == 0)
+						setImmunityCounter(i, Integer.MAX_VALUE);
+					else
+						setImmunityCounter(i, params.recoveryDelay);
+				}
+				else
+					changeType(i, Person.SUSCEPTIBLE, counters);
+			}
+		}
+	}
+
+	/**
+	 * Handles person <i> becoming susceptible again if they are recovered / immune
+	 */
+	public void getSickSoon(int i, CompartmentCounters counters) {
+		if(getType(i) == Person.RECOVERED) {
+			//decrement the immunity counter.  If it equals 0, become suceptible again
+			setImmunityCounter(i, getImmunityCounter(i) - 1);
+			if(getImmunityCounter(i) <= 0) {
+				changeType(i, Person.SUSCEPTIBLE, counters);
+			}
+		}
+	}
+
+	/**
+	 * Can a collision between person a and person b make anyone infective?
+	 * Uses the previous types of a and b, so that we don't switch types too early
+	 */
+	public boolean canTransmit(int a, int b) {
+		if(getPreviousType(a) == Person.RECOVERED || getPreviousType(b) == Person.RECOVERED) {
+			return false;
+		}
+		return getPreviousType(a) == Person.INFECTIVE || getPreviousType(b) == Person.INFECTIVE;
+	}
+}
@@ -0,0 +1,180 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Draws the people in an engine's arena into a BufferedImage, without ever making the simulation wait for the screen.
+ *
+ * The simulation thread copies where everyone is into a snapshot with publish(), and the event thread draws
+ * the newest snapshot with render().  There are three snapshots - one being filled, the newest finished one,
+ * and the one on screen - so each thread only ever holds the lock long enough to swap two of them.
+ * Publishing is only worth it as often as frames are shown, so the simulation asks isFrameDue() first, and at full
+ * speed the window shows roughly every Nth step instead of slowing down to draw them all.
+ *
+ * The image is reused every frame, and everyone is drawn straight into its pixels.
+ * It shows a viewport onto the world - the image's own area unless setViewport() says otherwise - scaled to fit, so a
+ * world far bigger than the screen can still be watched, with everyone at least a pixel across.
+ *
+ */
+public class PopulationRenderer {
+
+	/*
+	 * Everyone's position and type at the end of one step
+	 */
+	private static class Snapshot {
+		int timestep;
+		int size;
+		int[] x = new int[0];
+		int[] y = new int[0];
+		int[] type = new int[0];
+	}
+
+	//the part of the world shown, and how many pixels there are to each unit of it
+	private int originX;
+	private int originY;
+	private double scale = 1;
+	private int[] typeColors;
+	private int backgroundColor;
+	private long frameNanos;
+
+	//being filled by the simulation thread, the newest finished one, and the one the image shows
+	private Snapshot filling = new Snapshot();
+	private Snapshot newest = new Snapshot();
+	private Snapshot shown = new Snapshot();
+	private boolean newestIsNew;
+	private volatile long lastPublished;
+
+	private BufferedImage image;
+	private int[] pixels;
+
+	/**
+	 * Draw the area at <x>, <y> of <width> by <height>, coloring each type of person with typeColors[type],
+	 * at no more than <maxFramesPerSecond>
+	 */
+	public PopulationRenderer(int x, int y, int width, int height, Color[] typeColors, Color backgroundColor, int maxFramesPerSecond) {
+		this.originX = x;
+		this.originY = y;
+		this.typeColors = new int[typeColors.length];
+		for(int type = 0; type < typeColors.length; type++) {
+			this.typeColors[type] = typeColors[type].getRGB();
+		}
+		this.backgroundColor = backgroundColor.getRGB();
+		frameNanos = 1000000000L / Math.max(1, maxFramesPerSecond);
+		lastPublished = System.nanoTime() - frameNanos;
+
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		Arrays.fill(pixels, this.backgroundColor);
+	}
+
+	/**
+	 * Show the area of the world at <x>, <y> of <width> by <height>, as big as fits in the image without changing its shape.
+	 * Call on the event thread
+	 */
+	public void setViewport(int x, int y, int width, int height) {
+		originX = x;
+		originY = y;
+		scale = Math.min((double) image.getWidth() / width, (double) image.getHeight() / height);
+		synchronized(this) {
+			//draw the shown snapshot again, at the new scale
+			if(!newestIsNew) {
+				Snapshot swap = newest;
+				newest = shown;
+				shown = swap;
+				newestIsNew = true;
+			}
+		}
+	}
+
+	/**
+	 * @return has it been long enough since the last publish() that the screen could show another frame?
+	 */
+	public boolean isFrameDue() {
+		return System.nanoTime() - lastPublished >= frameNanos;
+	}
+
+	/**
+	 * Copy where everyone in <engine> is now - call on the thread that steps it, between steps
+	 */
+	public void publish(SimulationEngine engine) {
+		Population people = engine.getPopulation();
+		Snapshot snapshot = filling;
+		int n = people.size();
+		if(snapshot.x.length < n) {
+			snapshot.x = new int[n];
+			snapshot.y = new int[n];
+			snapshot.type = new int[n];
+		}
+		for(int i = 0; i < n; i++) {
+			snapshot.x[i] = people.getX(i);
+			snapshot.y[i] = people.getY(i);
+			snapshot.type[i] = people.getType(i);
+		}
+		snapshot.size = n;
+		snapshot.timestep = engine.getCurrentTimestep();
+
+		synchronized(this) {
+			filling = newest;
+			newest = snapshot;
+			newestIsNew = true;
+		}
+		lastPublished = System.nanoTime();
+	}
+
+	/**
+	 * @return is there a snapshot that hasn't been rendered yet?
+	 */
+	public synchronized boolean hasNewFrame() {
+		return newestIsNew;
+	}
+
+	/**
+	 * Draw the newest snapshot, if it hasn't been already - call on the event thread
+	 * @return the image, which is reused, so don't hang on to it
+	 */
+	public BufferedImage render() {
+		synchronized(this) {
+			if(!newestIsNew)
+				return image;
+			Snapshot swap = shown;
+			shown = newest;
+			newest = swap;
+			newestIsNew = false;
+		}
+
+		Arrays.fill(pixels, backgroundColor);
+		int width = image.getWidth();
+		int height = image.getHeight();
+		for(int i = 0; i < shown.size; i++) {
+			int color = typeColors[shown.type[i]];
+			int left = toPixels(shown.x[i] - originX);
+			int top = toPixels(shown.y[i] - originY);
+			int right = Math.min(width, Math.max(left + 1, toPixels(shown.x[i] - originX + Person.WIDTH)));
+			int bottom = Math.min(height, Math.max(top + 1, toPixels(shown.y[i] - originY + Person.HEIGHT)));
+			left = Math.max(0, left);
+			top = Math.max(0, top);
+			for(int row = top; row < bottom; row++) {
+				Arrays.fill(pixels, row * width + left, Math.max(row * width + left, row * width + right), color);
+			}
+		}
+		return image;
+	}
+
+	//<distance> in the world, in pixels
+	private int toPixels(int distance) {
+		return scale == 1 ? distance : (int) Math.floor(distance * scale);
+	}
+
+	/**
+	 * @return the timestep the image shows the start of - what the engine's getCurrentTimestep() was when it was published
+	 */
+	public synchronized int getShownTimestep() {
+		return shown.timestep;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Hands out the random number generators for one run.
+ * Everything random in a run - where people start, location changes, moves, recoveries and infections -
+ * comes from streams derived from one master seed, so a seed always gives the same run.
+ * Each thread (or tile) gets its own generator, so nothing is shared between threads.
+ *
+ * Override newGenerator() to plug in a different kind of StreamRandom.
+ *
+ */
+public class RandomStreams {
+
+	//the phases of a step that use random numbers, used to pick streams
+	public static final int PHASE_SETUP = 0;
+	public static final int PHASE_PREPARE = 1;
+	public static final int PHASE_MOVE = 2;
+	public static final int PHASE_COLLIDE = 3;
+
+	//not part of a step - picks the seeds for the runs of an ensemble or sweep
+	public static final int PHASE_REPLICATE = 4;
+
+	//the steps of a CompartmentModel, which has no people to key streams by
+	public static final int PHASE_COMPARTMENT = 5;
+
+	private long masterSeed;
+
+	public RandomStreams(long masterSeed) {
+		this.masterSeed = masterSeed;
+	}
+
+	public long getMasterSeed() {
+		return masterSeed;
+	}
+
+	/**
+	 * @return the master seed for run <replicate> of a group of runs that all come from this master seed
+	 */
+	public long replicateSeed(long replicate) {
+		StreamRandom rng = newGenerator();
+		rng.select(0, PHASE_REPLICATE, replicate);
+		return rng.nextLong();
+	}
+
+	/**
+	 * @return a new generator for the streams of this run - one per thread or tile
+	 */
+	public StreamRandom newGenerator() {
+		return new CounterRandom(masterSeed);
+	}
+}
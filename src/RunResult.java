@@ -0,0 +1,105 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * The few numbers we want out of one finished run - enough for one row of a sweep's results,
+ * without keeping the whole totals array around.
+ *
+ */
+public class RunResult {
+
+	//the columns of toString(), for the header of a results file
+	public static final String HEADER = "seed,timesteps,stop_reason,peak_infectives,peak_time,final_susceptible,final_infective,final_recovered,ms";
+
+	private long seed;
+	private int timesteps;
+	private String stopReason;
+	private int peakInfectives;
+	private int peakTime;
+	private int finalSusceptible;
+	private int finalInfective;
+	private int finalRecovered;
+	private long elapsedMillis;
+
+	/**
+	 * Sum up <engine>'s run so far, which took <elapsedMillis>
+	 */
+	public RunResult(SimulationEngine engine, long elapsedMillis) {
+		this(engine.getParameters().seed, engine.getTotals(), engine.getCurrentTimestep(), engine.getStopReason(), elapsedMillis);
+
+		//count everyone as they are now, after the last step
+		CompartmentCounters counters = engine.getCounters();
+		finalSusceptible = (int) counters.getCount(Person.SUSCEPTIBLE);
+		finalInfective = (int) counters.getCount(Person.INFECTIVE);
+		finalRecovered = (int) counters.getCount(Person.RECOVERED);
+	}
+
+	/**
+	 * Sum up <model>'s run so far, which took <elapsedMillis>
+	 */
+	public RunResult(CompartmentModel model, long elapsedMillis) {
+		this(model.getParameters().seed, model.getTotals(), model.getCurrentTimestep(), model.getStopReason(), elapsedMillis);
+		finalSusceptible = model.getCount(Person.SUSCEPTIBLE);
+		finalInfective = model.getCount(Person.INFECTIVE);
+		finalRecovered = model.getCount(Person.RECOVERED);
+	}
+
+	private RunResult(long seed, int[][] totals, int timesteps, String stopReason, long elapsedMillis) {
+		this.seed = seed;
+		this.timesteps = timesteps;
+		this.stopReason = stopReason;
+		this.elapsedMillis = elapsedMillis;
+
+		//find the first timestep with the most infectives
+		for(int t = 0; t < timesteps; t++) {
+			if(totals[Person.INFECTIVE][t] > peakInfectives) {
+				peakInfectives = totals[Person.INFECTIVE][t];
+				peakTime = t;
+			}
+		}
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getTimesteps() {
+		return timesteps;
+	}
+
+	/**
+	 * @return why the run stopped, like StopConditions.NO_INFECTIVES, or null if it was still going
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	public int getPeakInfectives() {
+		return peakInfectives;
+	}
+
+	public int getPeakTime() {
+		return peakTime;
+	}
+
+	public int getFinalSusceptible() {
+		return finalSusceptible;
+	}
+
+	public int getFinalInfective() {
+		return finalInfective;
+	}
+
+	public int getFinalRecovered() {
+		return finalRecovered;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the numbers as one CSV row, in the order of HEADER
+	 */
+	public String toString() {
+		return seed + "," + timesteps + "," + stopReason + "," + peakInfectives + "," + peakTime + "," + finalSusceptible + "," + finalInfective + "," + finalRecovered + "," + elapsedMillis;
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Keeps the count, mean and variance of a stream of values without keeping the values themselves,
+ * using Welford's method so the variance doesn't fall apart when the values are big and close together.
+ *
+ */
+public class RunningStatistics {
+
+	private long count;
+	private double mean;
+	//sum of squared differences from the mean
+	private double m2;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if(value < min) min = value;
+		if(value > max) max = value;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return count > 0 ? mean : Double.NaN;
+	}
+
+	/**
+	 * @return the sample variance - NaN until there are two values
+	 */
+	public double getVariance() {
+		return count > 1 ? m2 / (count - 1) : Double.NaN;
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	public double getMin() {
+		return count > 0 ? min : Double.NaN;
+	}
+
+	public double getMax() {
+		return count > 0 ? max : Double.NaN;
+	}
+}
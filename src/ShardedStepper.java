@@ -0,0 +1,388 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs the steps of a SimulationEngine with locations a location at a time, on several threads.
+ * Each location is a shard that owns the people in its part of the world - its rectangle, and half the space between
+ * it and its neighbours - with its own list of them and its own grids, so a shard's work stays in its own memory.
+ *
+ * Shards only ever change their own people, and only talk to their (up to 8) neighbours, through mailboxes that only
+ * the sending shard writes to and that are only read once every shard has finished the phase that wrote them:
+ * - people who move into a neighbour's part of the world are handed over to it after the move
+ * - people close enough to a neighbour's edge to collide with (or be run from by) someone over there are passed to it,
+ *   so its grids can find them - they're only looked at, never changed, by the neighbour
+ * People only move a few pixels a step, and every part of the world is wider than the distance anyone can reach, so
+ * neighbours are all anyone ever needs to hear from.
+ *
+ * Everyone is checked against exactly the people the single threaded step would check them against, with the same
+ * random numbers, so the results are exactly the same - whatever the number of threads, and wherever people wander.
+ * Active set mode makes no difference to a sharded step, since every shard is checked anyway.
+ *
+ */
+public class ShardedStepper implements Stepper {
+
+	//the phases of a step
+	private static final int PHASE_PREPARE = 1;
+	private static final int PHASE_NEAREST = 2;
+	private static final int PHASE_MOVE = 3;
+	private static final int PHASE_SETTLE = 4;
+	private static final int PHASE_COLLIDE = 5;
+
+	//a shard's neighbours are kept by direction, (column change + 1) * 3 + (row change + 1), so the way back is 8 - direction
+	private static final int NUM_DIRECTIONS = 9;
+	private static final int HERE = 4;
+
+	//the kinds of mail shards send each other: who's moving there, who's close enough to its edge to collide with,
+	//and which infectives are close enough to its edge to be run from
+	private static final int MIGRANTS = 0;
+	private static final int NEAR_EDGE = 1;
+	private static final int INFECTIVES_NEAR_EDGE = 2;
+	private static final int NUM_KINDS = 3;
+
+	//how close to a shard's edge someone has to be for the shard next to it to need them
+	private static final int COLLISION_REACH = SimulationEngine.COLLISION_RADIUS * Person.WIDTH;
+	private static final int AVOID_REACH = (SimulationEngine.AVOID_RADIUS + 1) * Person.WIDTH;
+
+	private SimulationEngine engine;
+	private Population people;
+	private boolean avoiding;
+	private ForkJoinPool pool;
+	private Shard[] shards;
+
+	//runs every shard at once
+	private RecursiveAction allShards = new RecursiveAction() {
+		private static final long serialVersionUID = 1L;
+		protected void compute() {
+			ForkJoinTask.invokeAll(shards);
+		}
+	};
+
+	//what the shards should do when they are run next
+	private int phase;
+	private int step;
+	private boolean counting;
+
+	/**
+	 * Shard <engine>'s locations, and run them on <threads> threads - or one per location, up to the number of cores, if 0
+	 */
+	public ShardedStepper(SimulationEngine engine, int threads) {
+		this.engine = engine;
+		people = engine.getPopulation();
+		avoiding = engine.getParameters().moveAwayFromInfectives;
+		LocationGrid locations = engine.getLocations();
+		int numCols = locations.getNumCols();
+		int numRows = locations.getNumRows();
+		if(threads <= 0)
+			threads = Math.min(numCols * numRows, Runtime.getRuntime().availableProcessors());
+		pool = new ForkJoinPool(threads);
+
+		shards = new Shard[numCols * numRows];
+		for(int c = 0; c < numCols; c++) {
+			for(int r = 0; r < numRows; r++) {
+				shards[locations.getId(c, r)] = new Shard(locations, c, r);
+			}
+		}
+		for(int c = 0; c < numCols; c++) {
+			for(int r = 0; r < numRows; r++) {
+				for(int dc = -1; dc <= 1; dc++) {
+					for(int dr = -1; dr <= 1; dr++) {
+						if((dc != 0 || dr != 0) && c + dc >= 0 && c + dc < numCols && r + dr >= 0 && r + dr < numRows)
+							shards[locations.getId(c, r)].neighbours[direction(dc, dr)] = shards[locations.getId(c + dc, r + dr)];
+					}
+				}
+			}
+		}
+
+		//everyone starts out in the shard whose part of the world they're in
+		for(int i = 0; i < people.size(); i++) {
+			int x = people.getX(i);
+			int y = people.getY(i);
+			shards[locations.getId(locations.getNearestColumn(x), locations.getNearestRow(y))].add(i);
+		}
+	}
+
+	private static int direction(int dc, int dr) {
+		return (dc + 1) * 3 + (dr + 1);
+	}
+
+	public void step(int step, StepMetrics metrics) {
+		this.step = step;
+		this.counting = metrics != null;
+		long time = metrics == null ? 0 : System.nanoTime();
+		runPhase(PHASE_PREPARE);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.PREPARE, time);
+
+		//each shard builds its own infective grid as it goes
+		if(metrics != null) time = metrics.endPhase(StepMetrics.INFECTIVE_GRID, time);
+		if(avoiding)
+			runPhase(PHASE_NEAREST);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.NEAREST, time);
+
+		runPhase(PHASE_MOVE);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.MOVE, time);
+		runPhase(PHASE_SETTLE);
+		if(metrics != null) time = metrics.endPhase(StepMetrics.GRID, time);
+
+		runPhase(PHASE_COLLIDE);
+
+		//add up the shards' changes to the counts, now that no shard is running
+		for(Shard shard : shards) {
+			engine.getCounters().addChanges(shard.changes);
+		}
+		if(metrics != null) {
+			metrics.endPhase(StepMetrics.COLLIDE, time);
+			for(Shard shard : shards) {
+				metrics.addCounts(shard.counts);
+			}
+		}
+	}
+
+	//run <phase> on every shard, and wait for all of them to finish
+	//the tasks are reused every phase, so a step doesn't make any new objects once the shards' lists are big enough
+	private void runPhase(int phase) {
+		this.phase = phase;
+		for(Shard shard : shards) {
+			shard.reinitialize();
+		}
+		allShards.reinitialize();
+		pool.invoke(allShards);
+	}
+
+	/**
+	 * @return how many people are in each location's shard right now, by location id
+	 */
+	public int[] getShardSizes() {
+		int[] sizes = new int[shards.length];
+		for(int k = 0; k < shards.length; k++) {
+			sizes[k] = shards[k].size();
+		}
+		return sizes;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/*
+	 * A list of people's indexes that only grows - clearing it keeps the room
+	 */
+	private static class IdList {
+		int[] ids = new int[16];
+		int size;
+
+		void add(int id) {
+			if(size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+
+		void addAll(IdList other) {
+			for(int k = 0; k < other.size; k++) {
+				add(other.ids[k]);
+			}
+		}
+	}
+
+	/*
+	 * One location's part of the world, and the people in it
+	 */
+	private class Shard extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		//this shard's part of the world - everything from left to right and top to bottom, not counting right and bottom
+		private int left, right, top, bottom;
+
+		//the area the grids cover: this shard's part of the world and as far past it as anyone can reach, inside the world
+		private int gridX, gridY, gridWidth, gridHeight;
+
+		private Shard[] neighbours = new Shard[NUM_DIRECTIONS];
+
+		//the people in this shard, in no particular order
+		private IdList members = new IdList();
+
+		//the mailboxes, by kind of mail and then the direction of the neighbour they're for
+		private IdList[][] mail = new IdList[NUM_KINDS][NUM_DIRECTIONS];
+
+		//everyone the grids hold, members first and then the neighbours' people - the grids hold indexes into these
+		private IdList nearby = new IdList();
+		private IdList infectives = new IdList();
+		private SpatialGrid grid;
+		private SpatialGrid infectiveGrid;
+
+		private StreamRandom rng = engine.getRandomStreams().newGenerator();
+
+		//this shard's share of the collision counts, when they're being counted
+		private StepMetrics counts = new StepMetrics();
+
+		//the changes of type and location this shard's people made this step
+		private CompartmentCounters changes = new CompartmentCounters(engine.getLocations().getNumLocations());
+
+		Shard(LocationGrid locations, int col, int row) {
+			left = locations.getColumnStart(col);
+			right = locations.getColumnStart(col + 1);
+			top = locations.getRowStart(row);
+			bottom = locations.getRowStart(row + 1);
+
+			int reach = Math.max(COLLISION_REACH, AVOID_REACH);
+			int areaRight = locations.getAreaX() + locations.getAreaWidth();
+			int areaBottom = locations.getAreaY() + locations.getAreaHeight();
+			gridX = (int) Math.max(locations.getAreaX(), (long) left - reach);
+			gridY = (int) Math.max(locations.getAreaY(), (long) top - reach);
+			gridWidth = (int) Math.min(areaRight, (long) right + reach) - gridX;
+			gridHeight = (int) Math.min(areaBottom, (long) bottom + reach) - gridY;
+
+			for(int kind = 0; kind < NUM_KINDS; kind++) {
+				for(int d = 0; d < NUM_DIRECTIONS; d++) {
+					mail[kind][d] = new IdList();
+				}
+			}
+		}
+
+		void add(int i) {
+			members.add(i);
+		}
+
+		int size() {
+			return members.size;
+		}
+
+		protected void compute() {
+			switch(phase) {
+			case PHASE_PREPARE:
+				prepare();
+				break;
+			case PHASE_NEAREST:
+				findNearestInfectives();
+				break;
+			case PHASE_MOVE:
+				move();
+				break;
+			case PHASE_SETTLE:
+				settle();
+				break;
+			case PHASE_COLLIDE:
+				collide();
+				break;
+			}
+		}
+
+		//remember where everyone started, and tell the neighbours about infectives they might run from
+		private void prepare() {
+			clear(INFECTIVES_NEAR_EDGE);
+			for(int k = 0; k < members.size; k++) {
+				int i = members.ids[k];
+				rng.select(step, RandomStreams.PHASE_PREPARE, i);
+				engine.prepare(i, rng, changes);
+				if(avoiding && people.getType(i) == Person.INFECTIVE)
+					tellNeighbours(i, AVOID_REACH, INFECTIVES_NEAR_EDGE);
+			}
+		}
+
+		//find everyone's nearest infective among the infectives here and the ones the neighbours sent
+		private void findNearestInfectives() {
+			infectives.size = 0;
+			for(int k = 0; k < members.size; k++) {
+				if(people.getType(members.ids[k]) == Person.INFECTIVE)
+					infectives.add(members.ids[k]);
+			}
+			collectMail(INFECTIVES_NEAR_EDGE, infectives);
+			infectiveGrid = fill(infectiveGrid, infectives, AVOID_REACH);
+			for(int k = 0; k < members.size; k++) {
+				engine.findNearestInfectiveFor(members.ids[k], infectiveGrid, infectives.ids);
+			}
+		}
+
+		//move everyone, and hand anyone who leaves this shard's part of the world to the neighbour they moved into
+		private void move() {
+			clear(MIGRANTS);
+			for(int k = members.size - 1; k >= 0; k--) {
+				int i = members.ids[k];
+				rng.select(step, RandomStreams.PHASE_MOVE, i);
+				engine.moveAndRecover(i, rng, changes);
+				int x = people.getX(i);
+				int y = people.getY(i);
+				int d = direction(x < left ? -1 : x >= right ? 1 : 0, y < top ? -1 : y >= bottom ? 1 : 0);
+				if(d != HERE) {
+					mail[MIGRANTS][d].add(i);
+					members.ids[k] = members.ids[--members.size];
+				}
+			}
+		}
+
+		//take in the people who moved here, then tell the neighbours about everyone close enough to collide with their people
+		private void settle() {
+			collectMail(MIGRANTS, members);
+			clear(NEAR_EDGE);
+			for(int k = 0; k < members.size; k++) {
+				tellNeighbours(members.ids[k], COLLISION_REACH, NEAR_EDGE);
+			}
+		}
+
+		//check everyone here for collisions with anyone close enough, here or sent by the neighbours
+		private void collide() {
+			nearby.size = 0;
+			nearby.addAll(members);
+			collectMail(NEAR_EDGE, nearby);
+			grid = fill(grid, nearby, COLLISION_REACH);
+
+			StepMetrics shardCounts = null;
+			if(counting) {
+				shardCounts = counts;
+				shardCounts.clearCounts();
+			}
+			for(int k = 0; k < members.size; k++) {
+				engine.checkCollisions(members.ids[k], grid, nearby.ids, step, rng, changes, shardCounts);
+			}
+		}
+
+		//send person <i> as <kind> of mail to every neighbour whose part of the world is less than <reach> away
+		private void tellNeighbours(int i, int reach, int kind) {
+			int x = people.getX(i);
+			int y = people.getY(i);
+			int dc = x < left + reach ? -1 : x >= right - reach ? 1 : 0;
+			int dr = y < top + reach ? -1 : y >= bottom - reach ? 1 : 0;
+			if(dc != 0)
+				send(i, direction(dc, 0), kind);
+			if(dr != 0)
+				send(i, direction(0, dr), kind);
+			if(dc != 0 && dr != 0)
+				send(i, direction(dc, dr), kind);
+		}
+
+		private void send(int i, int d, int kind) {
+			if(neighbours[d] != null)
+				mail[kind][d].add(i);
+		}
+
+		//add all the <kind> of mail the neighbours sent this shard to <into>
+		//a neighbour in direction d sent it to the mailbox for the opposite direction
+		private void collectMail(int kind, IdList into) {
+			for(int d = 0; d < NUM_DIRECTIONS; d++) {
+				if(neighbours[d] != null)
+					into.addAll(neighbours[d].mail[kind][NUM_DIRECTIONS - 1 - d]);
+			}
+		}
+
+		private void clear(int kind) {
+			for(IdList mailbox : mail[kind]) {
+				mailbox.size = 0;
+			}
+		}
+
+		//<grid> emptied and filled with everyone in <ids> by their index in it, or a bigger one if it's too small
+		private SpatialGrid fill(SpatialGrid grid, IdList ids, int cellSize) {
+			if(grid == null || grid.getCapacity() < ids.size) {
+				grid = new SpatialGrid(gridX, gridY, gridWidth, gridHeight, cellSize, Math.max(16, ids.size * 2));
+			} else {
+				grid.clear();
+			}
+			for(int k = 0; k < ids.size; k++) {
+				grid.insert(k, people.getX(ids.ids[k]), people.getY(ids.ids[k]));
+			}
+			return grid;
+		}
+	}
+}
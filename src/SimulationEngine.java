@@ -0,0 +1,722 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * The simulation itself, without any windows.
+ * Holds the population, the parameters and the number of each type of person at every timestep.
+ * The DiseaseModel window is just one way to watch an engine - batch runs can use it directly.
+ *
+ */
+public class SimulationEngine {
+
+	//where the world all of the People move around in starts, and how big it is unless the parameters say otherwise.
+	//The default size matches the screen area in the DiseaseModel window, which shows any other size scaled to fit
+	public static final int ARENA_X = 5;
+	public static final int ARENA_Y = 25;
+	public static final int ARENA_WIDTH = 500;
+	public static final int ARENA_HEIGHT = 515;
+
+	//the world, and the locations people are kept inside of - just the whole world if locations are not used
+	private LocationGrid locations;
+
+	//store all the people
+	private Population people;
+
+	//the grid used to find the people near each other, sized to the collision radius
+	static final int COLLISION_RADIUS = 2;
+	private SpatialGrid grid;
+
+	//only the infectives, rebuilt every step, sized to the radius people look for infectives in
+	static final int AVOID_RADIUS = 2;
+	private SpatialGrid infectiveGrid;
+
+	//the index of everyone's nearest infective for this step, or Population.NONE
+	private IntColumn nearestInfectives;
+
+	//in active set mode, which collision grid cells are next to someone who was infective at the start of the step
+	//indexed like the grid, row * numCols + col.  null when not in active set mode
+	private boolean[] activeCells;
+
+	//what can stop the run before it runs out of timesteps, and why it stopped - null while it's still going
+	private StopCondition[] stopConditions = new StopCondition[0];
+	private String stopReason;
+
+	//store all the totals of different types of people, for each timestep by type.  Without params.keepAllTotals, only
+	//the last few timesteps are kept, going round and round - timestep t is at t % the length
+	private int[][] totals;
+
+	//how many people are of each type right now, kept up to date as people change, so the totals don't need a recount
+	private CompartmentCounters counters;
+
+	//new infections, recoveries and lost immunities during each timestep - incidence[event][timestep]
+	private int[][] incidence;
+
+	//the values this run was set up with
+	private ModelParameters params;
+
+	//where all the random numbers come from, and the generator for the single threaded step
+	private RandomStreams streams;
+	private StreamRandom numGen;
+
+	//runs each step on several threads, in tiles or in location shards, if asked for
+	private Stepper stepper;
+
+	//who wants to hear about every step, and what we measured for them - null while no one is listening
+	private volatile MetricsListener[] listeners = new MetricsListener[0];
+	private volatile StepMetrics metrics;
+
+	//where every step's row is written as soon as it's run - null if nowhere
+	private volatile TrajectoryOutput output;
+
+	//what writes a checkpoint every so often, after the step - null if nothing
+	private volatile CheckpointWriter checkpoints;
+
+	private int totalNumTimesteps;
+	private int curTimestep = 0;
+
+	/**
+	 * Sets up the locations and the population described by <params>, with random numbers from params.seed
+	 * @throws IllegalArgumentException if the parameters are not valid
+	 */
+	public SimulationEngine(ModelParameters params) {
+		this(params, new RandomStreams(params.seed));
+	}
+
+	/**
+	 * Sets up the locations and the population described by <params>, with random numbers from <streams>
+	 * @throws IllegalArgumentException if the parameters are not valid
+	 */
+	public SimulationEngine(ModelParameters params, RandomStreams streams) {
+		this(params, streams, null);
+	}
+
+	/*
+	 * Sets up everything for <params>, then places everyone randomly - or, with a <checkpoint>, puts everyone back the
+	 * way they were when it was written and picks the run up at the timestep it was written at
+	 */
+	SimulationEngine(ModelParameters params, RandomStreams streams, Checkpoint checkpoint) {
+		if(!params.isValid())
+			throw new IllegalArgumentException("INVALID ARGUMENTS");
+		this.params = params;
+		this.streams = streams;
+
+		locations = createLocations(params);
+
+		//make room for all the people
+		counters = new CompartmentCounters(locations.getNumLocations());
+		if(params.populationStore == ModelParameters.ARRAY_STORE) {
+			people = new ArrayPopulation(locations, params.initTotalPeople);
+		} else if(params.populationStore == ModelParameters.OFF_HEAP_STORE) {
+			people = new OffHeapPopulation(locations, params.initTotalPeople);
+		} else if(params.populationStore == ModelParameters.MAPPED_STORE) {
+			try {
+				people = OffHeapPopulation.mapped(locations, params.initTotalPeople);
+			} catch(IOException e) {
+				throw new IllegalStateException("couldn't map a file for the population: " + e.getMessage(), e);
+			}
+		} else {
+			people = new PersonPopulation(locations, params.initTotalPeople);
+		}
+		numGen = streams.newGenerator();
+		if(checkpoint == null)
+			placeEveryone();
+		else
+			checkpoint.readPeople(people, counters);
+
+		//store the number of timesteps
+		this.totalNumTimesteps = params.numTimesteps;
+
+		//get the max type integer value to set up the total counter array
+		int maxTypeValue = Math.max(Math.max(Person.SUSCEPTIBLE, Person.INFECTIVE), Person.RECOVERED);
+
+		//keep track of how many individuals we have at each timestep - or just for as long as the stop conditions look
+		//back, if every row is written out as it goes.  A checkpoint has every timestep, so a restored run keeps them all
+		int history = params.keepAllTotals || checkpoint != null ? totalNumTimesteps + 1 : Math.max(1, params.steadyStateWindow);
+		totals = new int[maxTypeValue+1][history];
+		incidence = new int[3][history];
+		if(checkpoint != null)
+			curTimestep = checkpoint.readTotals(totals, incidence);
+
+		//put everyone into the grid
+		//the grids and the nearest infectives are kept the same way as the people, on the heap or off it
+		grid = new SpatialGrid(ARENA_X, ARENA_Y, params.worldWidth, params.worldHeight, COLLISION_RADIUS * Person.WIDTH, people.size(),
+				locations.isTorus(), params.populationStore);
+		for(int j = 0; j < people.size(); j++) {
+			grid.insert(j, people.getX(j), people.getY(j));
+		}
+
+		//the infective grid is only needed when people avoid infectives
+		//squares of "radius" 2 overlap when people are less than 3 widths apart, so that is the cell size
+		nearestInfectives = IntColumn.create(people.size(), params.populationStore);
+		nearestInfectives.fill(Population.NONE);
+		if(params.moveAwayFromInfectives) {
+			int cellSize = (AVOID_RADIUS + 1) * Person.WIDTH;
+			infectiveGrid = new SpatialGrid(ARENA_X, ARENA_Y, params.worldWidth, params.worldHeight, cellSize, people.size(),
+					locations.isTorus(), params.populationStore);
+		}
+
+		if(params.activeSet) {
+			activeCells = new boolean[grid.getNumCols() * grid.getNumRows()];
+		}
+
+		if(params.shardByLocation) {
+			stepper = new ShardedStepper(this, params.threads);
+		} else if(params.threads > 0) {
+			stepper = new ParallelStepper(this, params.threads);
+		}
+
+		if(params.stopWhenNoInfectives)
+			addStopCondition(StopConditions.noInfectives());
+		if(params.steadyStateWindow > 0)
+			addStopCondition(StopConditions.steadyState(params.steadyStateWindow, params.steadyStateTolerance));
+		checkStopConditions();
+	}
+
+	//the world and the locations <params> ask for - just one location covering the world if locations are not used
+	static LocationGrid createLocations(ModelParameters params) {
+		if(params.useLocations)
+			return new LocationGrid(ARENA_X, ARENA_Y, params.worldWidth, params.worldHeight, params.numLocationCols, params.numLocationRows);
+		return new LocationGrid(ARENA_X, ARENA_Y, params.worldWidth, params.worldHeight, params.boundary == ModelParameters.TORUS);
+	}
+
+	//place the infectives and the susceptibles randomly, counting them as they go in - everyone from their own stream
+	private void placeEveryone() {
+		int[] place = new int[3];
+		for(int i = 0; i < params.initTotalPeople; i++) {
+			int type = startingPlace(i, params, locations, numGen, place);
+			people.add(place[0], place[1], type, place[2]);
+			counters.add(place[2], type);
+		}
+	}
+
+	/*
+	 * Where person <i> starts out, drawn from their own stream in <rng>, so anyone can work it out without placing
+	 * everyone before them.  The first params.initNumInfectives people are the infectives.
+	 * @return their type, with their x, y and location put in <place>
+	 */
+	static int startingPlace(int i, ModelParameters params, LocationGrid locations, StreamRandom rng, int[] place) {
+		rng.select(0, RandomStreams.PHASE_SETUP, i);
+		int type = i < params.initNumInfectives ? Person.INFECTIVE : Person.SUSCEPTIBLE;
+		int newPersonLoc = 0;
+		if(params.useLocations) {
+			int newPersonCol = 0;
+			int newPersonRow = 0;
+			if(!params.allInfectivesInSameLoc) {
+				//randomly determine which row and col they are in
+				newPersonCol = rng.nextInt(params.numLocationCols);
+				newPersonRow = rng.nextInt(params.numLocationRows);
+			} else if(type == Person.SUSCEPTIBLE) {
+				//all the infectives start in location 0,0, so do not put susceptibles there
+				while(newPersonCol == 0 && newPersonRow == 0) {
+					newPersonCol = rng.nextInt(params.numLocationCols);
+					newPersonRow = rng.nextInt(params.numLocationRows);
+				}
+			}
+			newPersonLoc = locations.getId(newPersonCol, newPersonRow);
+		}
+		//somewhere random inside their location
+		place[0] = rng.nextInt(locations.getWidth(newPersonLoc) - Person.WIDTH) + locations.getX(newPersonLoc);
+		place[1] = rng.nextInt(locations.getHeight(newPersonLoc) - Person.HEIGHT) + locations.getY(newPersonLoc);
+		place[2] = newPersonLoc;
+		return type;
+	}
+
+	/*
+	 * Finds the infective closest to person <i> whose square overlaps the square of "radius" 2 around them.
+	 * Only looks in the infective grid cells next to <i>, but gives the same answer as checking everyone:
+	 * ties go to the lowest index in the whole population, the way a scan through the whole list would find them.
+	 * <infectives> holds ids[k] as k, or everyone in <people> as their own index if <ids> is null.
+	 * Static, like the other rules that take a Population, so a DistributedWorker can run them on its own people
+	 */
+	static int findNearestInfective(Population people, int i, SpatialGrid infectives, int[] ids) {
+		LocationGrid locations = people.getLocations();
+		int x = people.getX(i);
+		int y = people.getY(i);
+		//the overlap test on the squares is the same as being less than this far away on both axes
+		int reachX = (AVOID_RADIUS + 1) * Person.WIDTH;
+		int reachY = (AVOID_RADIUS + 1) * Person.HEIGHT;
+		int col = infectives.getColumn(x);
+		int row = infectives.getRow(y);
+		int lastCol = infectives.lastNeighbourColumn(col);
+		int lastRow = infectives.lastNeighbourRow(row);
+
+		int nearestInfective = Population.NONE;
+		long distanceToNearestInfective = Long.MAX_VALUE;
+		for(int k = infectives.firstNeighbourColumn(col); k <= lastCol; k++) {
+			int c = infectives.wrapColumn(k);
+			for(int l = infectives.firstNeighbourRow(row); l <= lastRow; l++) {
+				int r = infectives.wrapRow(l);
+				for(int slot = infectives.first(c, r); slot != SpatialGrid.NONE; slot = infectives.next(slot)) {
+					int j = ids == null ? slot : ids[slot];
+					if(i == j) continue;
+					long xDiff = locations.differenceX(x, people.getX(j));
+					long yDiff = locations.differenceY(y, people.getY(j));
+					if(Math.abs(xDiff) >= reachX || Math.abs(yDiff) >= reachY) continue;
+					//compare squared distances - same order as the real distance
+					long distance = xDiff * xDiff + yDiff * yDiff;
+					if(distance < distanceToNearestInfective
+							|| (distance == distanceToNearestInfective && people.getId(j) < people.getId(nearestInfective))) {
+						distanceToNearestInfective = distance;
+						nearestInfective = j;
+					}
+				}
+			}
+		}
+		return nearestInfective;
+	}
+
+	/*
+	 * The parts of a step, one person at a time.
+	 * The single threaded step runs each part for everyone in order.  The ParallelStepper runs them a tile at a time,
+	 * and the ShardedStepper a location at a time.
+	 * Either way each person draws from their own stream, so both give exactly the same results.
+	 * Changes of type and location are counted in <changes> - the engine's own counters, or a tile's
+	 */
+
+	//remember where person <i> is before anyone moves, and send them to a new location if needbe
+	void prepare(int i, Random rng, CompartmentCounters changes) {
+		prepare(people, i, params, rng, changes);
+	}
+
+	//the same for person <i> of <people>, whoever's they are
+	static void prepare(Population people, int i, ModelParameters params, Random rng, CompartmentCounters changes) {
+		LocationGrid locations = people.getLocations();
+		people.savePrevious(i);
+		if(params.useLocations) {
+			if(rng.nextDouble() < params.changeLocationProb) {
+				int newLocCol = rng.nextInt(locations.getNumCols());
+				int newLocRow = rng.nextInt(locations.getNumRows());
+				int newLoc = locations.getId(newLocCol, newLocRow);
+				changes.changeLocation(people.getType(i), people.getLocationId(i), newLoc);
+				people.setLocationId(i, newLoc);
+			}
+		}
+	}
+
+	//put all the infectives into the infective grid, if anyone is avoiding them
+	void buildInfectiveGrid() {
+		if(params.moveAwayFromInfectives) {
+			infectiveGrid.clear();
+			for(int i = 0; i < people.size(); i++) {
+				if(people.getType(i) == Person.INFECTIVE)
+					infectiveGrid.insert(i, people.getX(i), people.getY(i));
+			}
+		}
+	}
+
+	//find the nearest infective, if we are moving away from infectives and we are not infective
+	void findNearestInfectiveFor(int i) {
+		findNearestInfectiveFor(i, infectiveGrid, null);
+	}
+
+	//the same, looking in <infectives>, which holds ids[k] as k - for a ShardedStepper's shards
+	void findNearestInfectiveFor(int i, SpatialGrid infectives, int[] ids) {
+		if(params.moveAwayFromInfectives && people.getType(i) != Person.INFECTIVE) {
+			nearestInfectives.set(i, findNearestInfective(people, i, infectives, ids));
+		} else {
+			//we are not moving away from nearest infectives, so just store nothing
+			nearestInfectives.set(i, Population.NONE);
+		}
+	}
+
+	//the nearest infective found for person <i> this step, or Population.NONE
+	int getNearestInfective(int i) {
+		return nearestInfectives.get(i);
+	}
+
+	//move person <i>, then make them get better or become susceptible if needbe
+	void moveAndRecover(int i, Random rng, CompartmentCounters changes) {
+		people.move(i, nearestInfectives.get(i), rng);
+		people.recover(i, params, rng, changes);
+	}
+
+	//put everyone into the grid cell they moved to
+	void updateGrid() {
+		for(int i = 0; i < people.size(); i++) {
+			grid.update(i, people.getX(i), people.getY(i));
+		}
+	}
+
+	/*
+	 * In active set mode, mark the cells that need checking for collisions this step:
+	 * every cell next to (or holding) someone who was infective at the start of the step.
+	 * A collision can only change someone within the collision radius of one of those people, and the collision radius
+	 * is no bigger than a cell, so skipping every other cell gives exactly the same results.
+	 */
+	void markActiveCells() {
+		if(activeCells == null)
+			return;
+		Arrays.fill(activeCells, false);
+		int numCols = grid.getNumCols();
+		for(int i = 0; i < people.size(); i++) {
+			if(people.getPreviousType(i) != Person.INFECTIVE)
+				continue;
+			int col = grid.getColumn(people.getX(i));
+			int row = grid.getRow(people.getY(i));
+			for(int k = grid.firstNeighbourColumn(col); k <= grid.lastNeighbourColumn(col); k++) {
+				for(int l = grid.firstNeighbourRow(row); l <= grid.lastNeighbourRow(row); l++) {
+					activeCells[grid.wrapRow(l) * numCols + grid.wrapColumn(k)] = true;
+				}
+			}
+		}
+	}
+
+	//does anyone in grid cell col, row need checking for collisions this step?
+	boolean isActiveCell(int col, int row) {
+		return activeCells == null || activeCells[row * grid.getNumCols() + col];
+	}
+
+	/*
+	 * Check person <i> for collisions with everyone close enough.
+	 * Only the 3x3 block of cells around someone can hold people within the collision radius.
+	 * Every pair is checked from both sides, like the old sorted strip did, but only <i> is ever changed
+	 * so tiles can run at the same time: the pair i, j and the pair j, i each get their own draw, keyed by the pair,
+	 * and <i> becomes infective exactly when either side's collision would have made both of them infective.
+	 * What happened is counted in <counts>, unless it's null
+	 */
+	void checkCollisions(int i, int step, StreamRandom rng, CompartmentCounters changes, StepMetrics counts) {
+		checkCollisions(i, grid, null, step, rng, changes, counts);
+	}
+
+	//the same, with everyone close enough found in <nearby>, which holds ids[k] as k - for a ShardedStepper's shards
+	void checkCollisions(int i, SpatialGrid nearby, int[] ids, int step, StreamRandom rng, CompartmentCounters changes, StepMetrics counts) {
+		checkCollisions(people, i, nearby, ids, step, params, rng, changes, counts);
+	}
+
+	//the same for person <i> of <people>, whoever's they are - the draws are keyed by index in the whole population
+	static void checkCollisions(Population people, int i, SpatialGrid nearby, int[] ids, int step, ModelParameters params,
+			StreamRandom rng, CompartmentCounters changes, StepMetrics counts) {
+		LocationGrid locations = people.getLocations();
+		int reachX = COLLISION_RADIUS * Person.WIDTH;
+		int reachY = COLLISION_RADIUS * Person.HEIGHT;
+		int x = people.getX(i);
+		int y = people.getY(i);
+		int col = nearby.getColumn(x);
+		int row = nearby.getRow(y);
+		int lastCol = nearby.lastNeighbourColumn(col);
+		int lastRow = nearby.lastNeighbourRow(row);
+		for(int k = nearby.firstNeighbourColumn(col); k <= lastCol; k++) {
+			int c = nearby.wrapColumn(k);
+			for(int l = nearby.firstNeighbourRow(row); l <= lastRow; l++) {
+				int r = nearby.wrapRow(l);
+				for(int slot = nearby.first(c, r); slot != SpatialGrid.NONE; slot = nearby.next(slot)) {
+					int j = ids == null ? slot : ids[slot];
+					if(j == i) continue;
+					if(counts != null) counts.addCollisionCandidate();
+					if(Math.abs(locations.differenceX(x, people.getX(j))) < reachX && Math.abs(locations.differenceY(y, people.getY(j))) < reachY) {
+						if(counts != null) counts.addCollision();
+						if(people.canTransmit(i, j)) {
+							int id = people.getId(i);
+							int other = people.getId(j);
+							rng.select(step, RandomStreams.PHASE_COLLIDE, id, other);
+							boolean infected = rng.nextDouble() < params.alpha;
+							if(!infected) {
+								rng.select(step, RandomStreams.PHASE_COLLIDE, other, id);
+								infected = rng.nextDouble() < params.alpha;
+							}
+							if(infected && people.getType(i) != Person.INFECTIVE) {
+								people.changeType(i, Person.INFECTIVE, changes);
+								if(counts != null) counts.addInfection();
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	SpatialGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * @return where this run's random numbers come from
+	 */
+	public RandomStreams getRandomStreams() {
+		return streams;
+	}
+
+	/**
+	 * Start telling <listener> about every step
+	 */
+	public synchronized void addMetricsListener(MetricsListener listener) {
+		MetricsListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+		added[listeners.length] = listener;
+		listeners = added;
+		if(metrics == null)
+			metrics = new StepMetrics();
+	}
+
+	/**
+	 * Stop telling <listener> about steps.  Once no one is listening, nothing is measured
+	 */
+	public synchronized void removeMetricsListener(MetricsListener listener) {
+		for(int i = 0; i < listeners.length; i++) {
+			if(listeners[i] == listener) {
+				MetricsListener[] removed = new MetricsListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, removed, 0, i);
+				System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+				listeners = removed;
+				break;
+			}
+		}
+		if(listeners.length == 0)
+			metrics = null;
+	}
+
+	/*
+	 * Write every step's row to <output> as soon as it's run, or stop if it's null - see TrajectoryOutput
+	 */
+	void setOutput(TrajectoryOutput output) {
+		this.output = output;
+	}
+
+	/*
+	 * Give <checkpoints> the chance to write one after every step, or stop if it's null - see CheckpointWriter
+	 */
+	void setCheckpointWriter(CheckpointWriter checkpoints) {
+		this.checkpoints = checkpoints;
+	}
+
+	/**
+	 * Stop the run as soon as <condition> says so - it's checked right away, and after every step
+	 */
+	public void addStopCondition(StopCondition condition) {
+		StopCondition[] added = Arrays.copyOf(stopConditions, stopConditions.length + 1);
+		added[stopConditions.length] = condition;
+		stopConditions = added;
+		if(stopReason == null)
+			stopReason = condition.stopReason(this);
+	}
+
+	//see if the run is over, and why
+	private void checkStopConditions() {
+		if(curTimestep >= totalNumTimesteps)
+			stopReason = StopConditions.ALL_TIMESTEPS;
+		for(int k = 0; k < stopConditions.length && stopReason == null; k++) {
+			stopReason = stopConditions[k].stopReason(this);
+		}
+	}
+
+	/**
+	 * @return why the run stopped, like StopConditions.NO_INFECTIVES, or null if it hasn't.
+	 * getCurrentTimestep() is then how many timesteps it ran
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * If the run stopped early in a state nothing can ever leave - nobody infective, and nobody who will lose their immunity -
+	 * fill in the totals for the timesteps that weren't run with the final counts, as if they had been run.
+	 * Only when every timestep's totals are kept
+	 * @return how many timesteps of totals there are now
+	 */
+	public int fillFrozenTotals() {
+		boolean frozen = counters.getCount(Person.INFECTIVE) == 0
+				&& (!params.useSIR || params.recoveryDelay == 0 || counters.getCount(Person.RECOVERED) == 0);
+		if(!frozen || !keepsAllTotals())
+			return curTimestep;
+		for(int t = curTimestep; t < totalNumTimesteps; t++) {
+			totals[Person.SUSCEPTIBLE][t] = (int) counters.getCount(Person.SUSCEPTIBLE);
+			totals[Person.INFECTIVE][t] = 0;
+			totals[Person.RECOVERED][t] = (int) counters.getCount(Person.RECOVERED);
+		}
+		return totalNumTimesteps;
+	}
+
+	/**
+	 * Stop any threads this engine started.  Only needed when running with threads
+	 */
+	public void shutdown() {
+		if(stepper != null)
+			stepper.shutdown();
+	}
+
+	/**
+	 * Has the run used up its timesteps, or been stopped early by a StopCondition?
+	 */
+	public boolean isFinished() {
+		return stopReason != null;
+	}
+
+	/**
+	 * Run the next <n> timesteps, or until the model is finished
+	 */
+	public void run(int n) {
+		for(int i = 0; i < n && !isFinished(); i++) {
+			step();
+		}
+	}
+
+	/**
+	 * Run one timestep: record the totals, move everyone and check for collisions
+	 */
+	public void step() {
+		if(isFinished()) return;
+
+		//only measure the step if someone is listening
+		StepMetrics m = metrics;
+		long time = m == null ? 0 : m.start(curTimestep);
+
+		//store how many of each type of people there is at the start of the timestep in the <totals> array
+		//the counters are kept up to date as people change, so there's no need to count everyone
+		int row = curTimestep % totals[0].length;
+		totals[Person.SUSCEPTIBLE][row] = (int) counters.getCount(Person.SUSCEPTIBLE);
+		totals[Person.INFECTIVE][row] = (int) counters.getCount(Person.INFECTIVE);
+		totals[Person.RECOVERED][row] = (int) counters.getCount(Person.RECOVERED);
+		counters.clearIncidence();
+		if(m != null) time = m.endPhase(StepMetrics.CENSUS, time);
+
+		if(stepper != null) {
+			stepper.step(curTimestep, m);
+		} else {
+			//remember where everyone started, and change people's locations if needbe
+			for(int i = 0; i < people.size(); i++) {
+				numGen.select(curTimestep, RandomStreams.PHASE_PREPARE, i);
+				prepare(i, numGen, counters);
+			}
+			if(m != null) time = m.endPhase(StepMetrics.PREPARE, time);
+
+			//find everyone's nearest infective
+			buildInfectiveGrid();
+			if(m != null) time = m.endPhase(StepMetrics.INFECTIVE_GRID, time);
+			if(params.moveAwayFromInfectives) {
+				for(int i = 0; i < people.size(); i++) {
+					findNearestInfectiveFor(i);
+				}
+			}
+			if(m != null) time = m.endPhase(StepMetrics.NEAREST, time);
+
+			//move everyone
+			for(int i = 0; i < people.size(); i++) {
+				numGen.select(curTimestep, RandomStreams.PHASE_MOVE, i);
+				moveAndRecover(i, numGen, counters);
+			}
+			if(m != null) time = m.endPhase(StepMetrics.MOVE, time);
+			updateGrid();
+			if(m != null) time = m.endPhase(StepMetrics.GRID, time);
+
+			//check for collisions - everyone, or just the people in active cells
+			//checking someone only ever changes them, so the order doesn't matter
+			if(activeCells == null) {
+				for(int i = 0; i < people.size(); i++) {
+					checkCollisions(i, curTimestep, numGen, counters, m);
+				}
+			} else {
+				markActiveCells();
+				for(int c = 0; c < grid.getNumCols(); c++) {
+					for(int r = 0; r < grid.getNumRows(); r++) {
+						if(!isActiveCell(c, r)) continue;
+						for(int i = grid.first(c, r); i != SpatialGrid.NONE; i = grid.next(i)) {
+							checkCollisions(i, curTimestep, numGen, counters, m);
+						}
+					}
+				}
+			}
+			if(m != null) time = m.endPhase(StepMetrics.COLLIDE, time);
+		}
+
+		//remember what happened during the timestep
+		incidence[CompartmentCounters.INFECTION][row] = (int) counters.getIncidence(CompartmentCounters.INFECTION);
+		incidence[CompartmentCounters.RECOVERY][row] = (int) counters.getIncidence(CompartmentCounters.RECOVERY);
+		incidence[CompartmentCounters.IMMUNITY_LOST][row] = (int) counters.getIncidence(CompartmentCounters.IMMUNITY_LOST);
+		TrajectoryOutput out = output;
+		if(out != null)
+			out.stepFinished(curTimestep, row, totals, incidence);
+
+		curTimestep++;
+		checkStopConditions();
+
+		CheckpointWriter c = checkpoints;
+		if(c != null)
+			c.stepFinished();
+
+		if(m != null) {
+			m.finish();
+			for(MetricsListener listener : listeners) {
+				listener.stepFinished(this, m);
+			}
+		}
+	}
+
+	/**
+	 * @return everyone in the model
+	 */
+	public Population getPopulation() {
+		return people;
+	}
+
+	/**
+	 * @return the locations people are kept in - a single location covering the arena if locations are not used
+	 */
+	public LocationGrid getLocations() {
+		return locations;
+	}
+
+	/**
+	 * @return the totals array - totals[type][timestep] is the number of people of that type at the start of that timestep
+	 * @throws IllegalStateException if only the last few timesteps are kept - the rows are in the TrajectoryOutput then
+	 */
+	public int[][] getTotals() {
+		checkAllTotalsKept();
+		return totals;
+	}
+
+	/**
+	 * @return the incidence array - incidence[event][timestep] is how many times <event> (like CompartmentCounters.INFECTION)
+	 * happened during that timestep
+	 * @throws IllegalStateException if only the last few timesteps are kept
+	 */
+	public int[][] getIncidence() {
+		checkAllTotalsKept();
+		return incidence;
+	}
+
+	/**
+	 * @return the number of people of <type> at the start of timestep <t>, which has to be one of the ones kept -
+	 * the last params.steadyStateWindow, at least, if they aren't all kept
+	 */
+	public int getTotal(int type, int t) {
+		return totals[type][t % totals[type].length];
+	}
+
+	/**
+	 * @return are the totals of every timestep kept, or only the last few?  See ModelParameters.keepAllTotals
+	 */
+	public boolean keepsAllTotals() {
+		return totals[0].length > totalNumTimesteps;
+	}
+
+	private void checkAllTotalsKept() {
+		if(!keepsAllTotals())
+			throw new IllegalStateException("only the last " + totals[0].length + " timesteps of totals are kept - the rest went to the output");
+	}
+
+	/**
+	 * @return the live counts of each type, overall and by location, and what happened during the last timestep
+	 */
+	public CompartmentCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * @return the parameters this engine was set up with
+	 */
+	public ModelParameters getParameters() {
+		return params;
+	}
+
+	/**
+	 * @return the timestep that will be run next
+	 */
+	public int getCurrentTimestep() {
+		return curTimestep;
+	}
+
+	public int getTotalNumTimesteps() {
+		return totalNumTimesteps;
+	}
+}
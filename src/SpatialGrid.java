@@ -0,0 +1,206 @@
+import java.util.Arrays;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * A uniform grid laid over the arena, used to find the people close to a given spot.
+ * Each cell keeps a linked list of the indexes of the people whose top left corner is inside it,
+ * so moving someone to a new cell is constant time and nothing ever needs to be sorted.
+ * Anything that falls outside the grid is kept in the nearest edge cell.
+ *
+ * A grid over a torus wraps around too: its cells are stretched a little so they tile the area exactly, and the
+ * cells next to an edge cell include the ones on the other side.
+ *
+ * The per-index lists can be kept off the heap, alongside the people of an OffHeapPopulation - see IntColumn.
+ *
+ */
+public class SpatialGrid {
+
+	//marks the end of a cell's list
+	public static final int NONE = -1;
+
+	//where the grid starts, and how big each cell is
+	private int originX;
+	private int originY;
+	private int cellSize;
+	private int numCols;
+	private int numRows;
+	private int width;
+	private int height;
+	private boolean wraps;
+
+	//the first index in each cell
+	private int[] cellHeads;
+
+	//linked list pointers, and which cell each index is in - all indexed by person
+	private IntColumn next;
+	private IntColumn previous;
+	private IntColumn cellOf;
+
+	/**
+	 * Basic Constructor - covers the given area with square cells of <cellSize>
+	 * @param capacity the number of indexes the grid can hold
+	 */
+	public SpatialGrid(int x, int y, int width, int height, int cellSize, int capacity) {
+		this(x, y, width, height, cellSize, capacity, false);
+	}
+
+	/**
+	 * Covers the given area with cells at least <cellSize> across, wrapping around at the edges if <wraps>
+	 * @param capacity the number of indexes the grid can hold
+	 */
+	public SpatialGrid(int x, int y, int width, int height, int cellSize, int capacity, boolean wraps) {
+		this(x, y, width, height, cellSize, capacity, wraps, ModelParameters.OBJECT_STORE);
+	}
+
+	/**
+	 * The same, keeping the per-index lists the way <store> (like ModelParameters.OFF_HEAP_STORE) keeps people
+	 */
+	public SpatialGrid(int x, int y, int width, int height, int cellSize, int capacity, boolean wraps, int store) {
+		this.originX = x;
+		this.originY = y;
+		this.cellSize = cellSize;
+		this.width = width;
+		this.height = height;
+		this.wraps = wraps;
+		if(wraps) {
+			numCols = Math.max(1, width / cellSize);
+			numRows = Math.max(1, height / cellSize);
+		} else {
+			numCols = Math.max(1, (width + cellSize - 1) / cellSize);
+			numRows = Math.max(1, (height + cellSize - 1) / cellSize);
+		}
+		if((long) numCols * numRows > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many grid cells: " + numCols + " by " + numRows);
+
+		cellHeads = new int[numCols * numRows];
+		next = IntColumn.create(capacity, store);
+		previous = IntColumn.create(capacity, store);
+		cellOf = IntColumn.create(capacity, store);
+		clear();
+	}
+
+	/**
+	 * Empty every cell
+	 */
+	public void clear() {
+		Arrays.fill(cellHeads, NONE);
+		cellOf.fill(NONE);
+	}
+
+	//the column of the cell holding x, clamped into the grid
+	public int getColumn(int x) {
+		int col = wraps ? (int) Math.floorDiv((long) (x - originX) * numCols, width) : Math.floorDiv(x - originX, cellSize);
+		if(col < 0) return 0;
+		if(col >= numCols) return numCols - 1;
+		return col;
+	}
+
+	//the row of the cell holding y, clamped into the grid
+	public int getRow(int y) {
+		int row = wraps ? (int) Math.floorDiv((long) (y - originY) * numRows, height) : Math.floorDiv(y - originY, cellSize);
+		if(row < 0) return 0;
+		if(row >= numRows) return numRows - 1;
+		return row;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	//how many indexes the grid can hold
+	public int getCapacity() {
+		return next.length();
+	}
+
+	/*
+	 * The columns next to (and including) column <col> are firstNeighbourColumn() to lastNeighbourColumn(),
+	 * each passed through wrapColumn().  Without wrapping they're just the ones inside the grid.  With it, they go
+	 * round the edge - or are every column once, if there are fewer than 3.  Rows are the same
+	 */
+
+	public int firstNeighbourColumn(int col) {
+		if(!wraps) return Math.max(0, col - 1);
+		return numCols < 3 ? 0 : col - 1;
+	}
+
+	public int lastNeighbourColumn(int col) {
+		if(!wraps) return Math.min(numCols - 1, col + 1);
+		return numCols < 3 ? numCols - 1 : col + 1;
+	}
+
+	public int wrapColumn(int col) {
+		return wraps ? Math.floorMod(col, numCols) : col;
+	}
+
+	public int firstNeighbourRow(int row) {
+		if(!wraps) return Math.max(0, row - 1);
+		return numRows < 3 ? 0 : row - 1;
+	}
+
+	public int lastNeighbourRow(int row) {
+		if(!wraps) return Math.min(numRows - 1, row + 1);
+		return numRows < 3 ? numRows - 1 : row + 1;
+	}
+
+	public int wrapRow(int row) {
+		return wraps ? Math.floorMod(row, numRows) : row;
+	}
+
+	/**
+	 * Put index <i> into the cell holding x, y
+	 */
+	public void insert(int i, int x, int y) {
+		int cell = getRow(y) * numCols + getColumn(x);
+		previous.set(i, NONE);
+		next.set(i, cellHeads[cell]);
+		if(cellHeads[cell] != NONE)
+			previous.set(cellHeads[cell], i);
+		cellHeads[cell] = i;
+		cellOf.set(i, cell);
+	}
+
+	/**
+	 * Take index <i> out of whatever cell it is in
+	 */
+	public void remove(int i) {
+		int cell = cellOf.get(i);
+		if(cell == NONE) return;
+		int before = previous.get(i);
+		int after = next.get(i);
+		if(before != NONE)
+			next.set(before, after);
+		else
+			cellHeads[cell] = after;
+		if(after != NONE)
+			previous.set(after, before);
+		cellOf.set(i, NONE);
+	}
+
+	/**
+	 * Index <i> has moved to x, y - only touches the lists if it changed cells
+	 */
+	public void update(int i, int x, int y) {
+		int cell = getRow(y) * numCols + getColumn(x);
+		if(cell == cellOf.get(i)) return;
+		remove(i);
+		insert(i, x, y);
+	}
+
+	/**
+	 * @return the first index in the cell at col, row, or NONE if it is empty
+	 */
+	public int first(int col, int row) {
+		return cellHeads[row * numCols + col];
+	}
+
+	/**
+	 * @return the index after <i> in its cell, or NONE if <i> is the last one
+	 */
+	public int next(int i) {
+		return next.get(i);
+	}
+}
@@ -0,0 +1,161 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * What happened during one step: how long each phase took, how many pairs of people were close enough to be checked
+ * for a collision, how many actually collided, how many people got infected, and how much memory the step allocated.
+ *
+ * The engine only measures any of this while a MetricsListener is listening, and reuses the same StepMetrics
+ * every step - a listener should copy out whatever it wants to keep.
+ *
+ */
+public class StepMetrics {
+
+	//the phases of a step
+	public static final int CENSUS = 0;
+	public static final int PREPARE = 1;
+	public static final int INFECTIVE_GRID = 2;
+	public static final int NEAREST = 3;
+	public static final int MOVE = 4;
+	public static final int GRID = 5;
+	public static final int COLLIDE = 6;
+	public static final String[] PHASE_NAMES = {"census", "prepare", "infectiveGrid", "nearest", "move", "grid", "collide"};
+
+	//allocation counting, if this JVM can do it
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+	private int step;
+	private long[] phaseNanos = new long[PHASE_NAMES.length];
+	private long stepNanos;
+	private long startNanos;
+
+	private long collisionCandidates;
+	private long collisions;
+	private long infections;
+
+	private long startAllocatedBytes;
+	private long allocatedBytes = -1;
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+			if(counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+				return counter;
+		}
+		return null;
+	}
+
+	/**
+	 * Clear everything, and start timing step <step>
+	 * @return the time, for the first endPhase()
+	 */
+	long start(int step) {
+		this.step = step;
+		for(int phase = 0; phase < phaseNanos.length; phase++) {
+			phaseNanos[phase] = 0;
+		}
+		collisionCandidates = 0;
+		collisions = 0;
+		infections = 0;
+		if(THREADS != null)
+			startAllocatedBytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+		startNanos = System.nanoTime();
+		return startNanos;
+	}
+
+	/**
+	 * Count the time since <since> toward <phase>
+	 * @return the time now, for the next endPhase()
+	 */
+	long endPhase(int phase, long since) {
+		long now = System.nanoTime();
+		phaseNanos[phase] += now - since;
+		return now;
+	}
+
+	/**
+	 * Stop timing the step
+	 */
+	void finish() {
+		stepNanos = System.nanoTime() - startNanos;
+		if(THREADS != null)
+			allocatedBytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - startAllocatedBytes;
+	}
+
+	//counted while checking collisions
+	void addCollisionCandidate() {
+		collisionCandidates++;
+	}
+
+	void addCollision() {
+		collisions++;
+	}
+
+	void addInfection() {
+		infections++;
+	}
+
+	/**
+	 * Add the counts from <other> - one tile's share of a step - to these
+	 */
+	void addCounts(StepMetrics other) {
+		collisionCandidates += other.collisionCandidates;
+		collisions += other.collisions;
+		infections += other.infections;
+	}
+
+	/**
+	 * Clear just the counts, so a tile can start on a new step
+	 */
+	void clearCounts() {
+		collisionCandidates = 0;
+		collisions = 0;
+		infections = 0;
+	}
+
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * @return how long <phase> (like StepMetrics.MOVE) took, in nanoseconds
+	 */
+	public long getPhaseNanos(int phase) {
+		return phaseNanos[phase];
+	}
+
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * @return how many pairs of people were in nearby grid cells, and so were checked for a collision
+	 */
+	public long getCollisionCandidates() {
+		return collisionCandidates;
+	}
+
+	/**
+	 * @return how many of those pairs were actually close enough to collide - every pair is counted from both sides
+	 */
+	public long getCollisions() {
+		return collisions;
+	}
+
+	/**
+	 * @return how many people became infective from a collision
+	 */
+	public long getInfections() {
+		return infections;
+	}
+
+	/**
+	 * @return the bytes allocated by the thread that ran the step, or -1 if this JVM can't tell.
+	 * With threads, what the tiles allocate on the other threads isn't included
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+}
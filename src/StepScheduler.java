@@ -0,0 +1,155 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Decides when the next step of a run may happen.
+ * The thread running the model calls awaitNextStep() before every step, and blocks there - without using any CPU -
+ * while the model is paused or until the step delay is up.  Everything else (the buttons, the slider, closing the window)
+ * just changes the schedule from whatever thread it's on, and wakes the running thread up.
+ *
+ * A run is in one of three modes:
+ * - paused: no steps, unless some are asked for with step() or runSteps()
+ * - throttled: one step every <delay> milliseconds
+ * - max speed: no delay at all between steps, which is what a delay of 0 means
+ *
+ */
+public class StepScheduler {
+
+	//the modes a run can be in
+	public static final int PAUSED = 0;
+	public static final int THROTTLED = 1;
+	public static final int MAX_SPEED = 2;
+
+	private boolean paused;
+	private boolean stopped;
+	private long delayMillis;
+
+	//steps asked for while paused that haven't happened yet
+	private long pendingSteps;
+
+	//when the last step was let through, for the delay
+	private long lastStepNanos;
+
+	/**
+	 * A running schedule with <delayMillis> milliseconds between steps - 0 runs at max speed
+	 */
+	public StepScheduler(long delayMillis) {
+		setDelay(delayMillis);
+		lastStepNanos = System.nanoTime();
+	}
+
+	/**
+	 * Block until the next step should happen
+	 * @return true if it should, false if the run has been stopped (or this thread was interrupted)
+	 */
+	public synchronized boolean awaitNextStep() {
+		try {
+			while(!stopped) {
+				if(paused && pendingSteps == 0) {
+					//nothing to do until someone unpauses, steps or stops
+					wait();
+					continue;
+				}
+
+				//make sure we have waited long enough since the last step
+				long remaining = lastStepNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis) - System.nanoTime();
+				if(remaining > 0) {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					continue;
+				}
+
+				if(pendingSteps > 0)
+					pendingSteps--;
+				lastStepNanos = System.nanoTime();
+				return true;
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopped = true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stop letting steps through, until resume(), step() or runSteps()
+	 */
+	public synchronized void pause() {
+		paused = true;
+		pendingSteps = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Go back to running at the current delay
+	 */
+	public synchronized void resume() {
+		paused = false;
+		pendingSteps = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Pause if running, resume if paused
+	 */
+	public synchronized void cyclePause() {
+		if(paused)
+			resume();
+		else
+			pause();
+	}
+
+	/**
+	 * Pause after exactly one more step
+	 */
+	public void step() {
+		runSteps(1);
+	}
+
+	/**
+	 * Pause after exactly <n> more steps, still keeping to the delay between them
+	 */
+	public synchronized void runSteps(long n) {
+		paused = true;
+		pendingSteps = n;
+		notifyAll();
+	}
+
+	/**
+	 * Set the time between steps - 0 runs at max speed
+	 */
+	public synchronized void setDelay(long delayMillis) {
+		this.delayMillis = Math.max(0, delayMillis);
+		notifyAll();
+	}
+
+	/**
+	 * Stop for good - awaitNextStep() returns false from now on
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	public synchronized boolean isStopped() {
+		return stopped;
+	}
+
+	public synchronized long getDelay() {
+		return delayMillis;
+	}
+
+	/**
+	 * @return PAUSED, THROTTLED or MAX_SPEED
+	 */
+	public synchronized int getMode() {
+		if(paused)
+			return PAUSED;
+		if(delayMillis == 0)
+			return MAX_SPEED;
+		return THROTTLED;
+	}
+}
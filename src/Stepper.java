@@ -0,0 +1,18 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Runs the steps of a SimulationEngine somewhere other than the thread that calls step() - on several threads, say.
+ * Whatever it does, it has to give exactly the same results as the engine's own single threaded step.
+ *
+ */
+public interface Stepper {
+
+	/**
+	 * Run everything but the census for step <step>, timing and counting it in <metrics> unless that's null
+	 */
+	public void step(int step, StepMetrics metrics);
+
+	/**
+	 * Stop any threads
+	 */
+	public void shutdown();
+}
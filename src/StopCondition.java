@@ -0,0 +1,15 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * Decides whether a run can stop before it has used up all of its timesteps - because nothing can change any more,
+ * or nothing interesting is going to.  Checked by the SimulationEngine after every step, so it should be quick.
+ * StopConditions has the usual ones.
+ *
+ */
+public interface StopCondition {
+
+	/**
+	 * Called once the condition is added, and again after every step
+	 * @return why <engine> should stop now - a short word or two with no commas, since it ends up in CSV files - or null to keep going
+	 */
+	public String stopReason(SimulationEngine engine);
+}
@@ -0,0 +1,57 @@
+/**
+ * @author Will Richard and Andrew Calkins
+ * The stop conditions ModelParameters can ask for, and the reasons a run gives for stopping.
+ *
+ */
+public class StopConditions {
+
+	//why a run stopped
+	public static final String ALL_TIMESTEPS = "timesteps";
+	public static final String NO_INFECTIVES = "no_infectives";
+	public static final String STEADY_STATE = "steady_state";
+
+	private static final int[] TYPES = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+
+	private StopConditions() {
+	}
+
+	/**
+	 * @return a condition that stops a run once nobody is infective - nobody can ever get sick again after that
+	 */
+	public static StopCondition noInfectives() {
+		return new StopCondition() {
+			public String stopReason(SimulationEngine engine) {
+				return engine.getCounters().getCount(Person.INFECTIVE) == 0 ? NO_INFECTIVES : null;
+			}
+		};
+	}
+
+	/**
+	 * @return a condition that stops a run once the number of susceptible, infective and recovered people have each stayed
+	 * within <tolerance> (as a fraction of everyone, so .01 is 1%) of each other for the last <window> timesteps,
+	 * like an SIS run that has settled on its endemic level
+	 */
+	public static StopCondition steadyState(final int window, final double tolerance) {
+		return new StopCondition() {
+			public String stopReason(SimulationEngine engine) {
+				int now = engine.getCurrentTimestep();
+				if(now < window)
+					return null;
+				CompartmentCounters counters = engine.getCounters();
+				double allowed = tolerance * engine.getPopulation().size();
+				for(int type : TYPES) {
+					//the count now, and at the start of each of the last <window> timesteps
+					long min = counters.getCount(type);
+					long max = min;
+					for(int t = now - window; t < now; t++) {
+						min = Math.min(min, engine.getTotal(type, t));
+						max = Math.max(max, engine.getTotal(type, t));
+					}
+					if(max - min > allowed)
+						return null;
+				}
+				return STEADY_STATE;
+			}
+		};
+	}
+}
@@ -0,0 +1,27 @@
+import java.util.Random;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * A random number generator that can be pointed at any one of a run's independent streams.
+ * Pick the stream with select() - by step, phase and person (or tile, or pair of people) - then draw from it.
+ * The numbers in a stream never depend on what was drawn from any other stream, so a run comes out the same
+ * whichever order, or thread, the streams are used in.
+ *
+ */
+public abstract class StreamRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	public StreamRandom(long masterSeed) {
+		super(masterSeed);
+	}
+
+	/**
+	 * Start drawing from the stream for id <id> in phase <phase> of step <step>
+	 */
+	public abstract void select(long step, int phase, long id);
+
+	/**
+	 * Start drawing from the stream for the pair of ids <id>, <other> (in that order) in phase <phase> of step <step>
+	 */
+	public abstract void select(long step, int phase, long id, long other);
+}
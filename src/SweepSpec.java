@@ -0,0 +1,251 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Describes a parameter sweep: a ParameterFile with some of its values swept over, and how to pick the points.
+ * The file is a normal parameter file - those values are shared by every point - plus:
+ *
+ *   design=grid                  grid (every combination) or lhs (a Latin hypercube)
+ *   samples=100                  how many points an lhs design picks
+ *   sweep.alpha=.01,.02,.05      for a grid, a list of values...
+ *   sweep.numLocCols=1:5:5       ...or from:to:count evenly spaced values
+ *   sweep.beta=.01:.1            for lhs, the range to sample
+ *
+ * Any number key from ParameterFile.KEYS can be swept.  Sweeping seed gives replicates of every other point;
+ * otherwise every point gets its own seed picked from the master seed (seed=, 0 if not given).
+ * The points always come out in the same order for the same file, so a sweep can be picked up where it left off.
+ * Every point is checked when the sweep is read, so one with values that don't make sense together (more infectives
+ * than people, locations too small for anyone to fit in) is reported before anything runs.
+ *
+ */
+public class SweepSpec {
+
+	public static final String GRID = "grid";
+	public static final String LHS = "lhs";
+
+	private static final String SWEEP_PREFIX = "sweep.";
+
+	//keys that are ParameterFile keys, but whole numbers, so lhs samples get rounded
+	private static final String[] WHOLE_NUMBER_KEYS = {"diseaseLength", "population", "timesteps", "recoveryTime",
+		"numLocCols", "numLocRows", "worldWidth", "worldHeight", "seed", "threads", "steadyStateWindow"};
+
+	private Properties base;
+	private long masterSeed;
+	private String[] sweptKeys;
+	private List<String[]> points = new ArrayList<String[]>();
+
+	/**
+	 * Read the sweep in <file>
+	 * @throws IllegalArgumentException if the sweep doesn't make sense, or any of its points aren't valid
+	 */
+	public static SweepSpec read(File file) throws IOException {
+		return new SweepSpec(ParameterFile.load(file));
+	}
+
+	/**
+	 * Expand <properties> into points
+	 * @throws IllegalArgumentException if the sweep doesn't make sense, or any of its points aren't valid
+	 */
+	public SweepSpec(Properties properties) {
+		base = new Properties();
+		List<String> keys = new ArrayList<String>();
+		String design = GRID;
+		int samples = 0;
+		for(String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key).trim();
+			if(key.startsWith(SWEEP_PREFIX)) {
+				String swept = key.substring(SWEEP_PREFIX.length());
+				if(!ParameterFile.isKey(swept) || swept.equals("store") || swept.equals("activeSet") || swept.equals("shardLocations"))
+					throw new IllegalArgumentException("Can't sweep " + swept);
+			} else if(key.equals("design")) {
+				design = value;
+			} else if(key.equals("samples")) {
+				samples = parseInt(key, value);
+			} else {
+				base.setProperty(key, value);
+			}
+		}
+		masterSeed = base.getProperty("seed") == null ? 0 : Long.parseLong(base.getProperty("seed").trim());
+		base.remove("seed");
+
+		//keep the swept keys in ParameterFile order, so the points are always in the same order
+		for(String key : ParameterFile.KEYS) {
+			if(properties.getProperty(SWEEP_PREFIX + key) != null)
+				keys.add(key);
+		}
+		sweptKeys = keys.toArray(new String[keys.size()]);
+
+		//make sure the shared values are fine on their own.  Every point runs single threaded, on one of the sweep's
+		//threads, so a point can't be sharded onto threads of its own
+		if(ParameterFile.fromProperties(base).shardByLocation)
+			throw new IllegalArgumentException("Can't use shardLocations in a sweep - each point runs on one of the sweep's threads");
+
+		if(design.equals(GRID)) {
+			String[][] values = new String[sweptKeys.length][];
+			for(int k = 0; k < sweptKeys.length; k++) {
+				values[k] = gridValues(sweptKeys[k], properties.getProperty(SWEEP_PREFIX + sweptKeys[k]).trim());
+			}
+			expandGrid(values, 0, new String[sweptKeys.length]);
+		} else if(design.equals(LHS)) {
+			if(samples <= 0)
+				throw new IllegalArgumentException("An lhs design needs samples > 0");
+			expandLatinHypercube(properties, samples);
+		} else {
+			throw new IllegalArgumentException("design should be grid or lhs, not " + design);
+		}
+
+		//check every point now, so a bad one doesn't stop the sweep part way through
+		for(int point = 0; point < points.size(); point++) {
+			try {
+				getParameters(point);
+			} catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Point " + point + " (" + describe(point) + ") isn't valid: " + e.getMessage());
+			}
+		}
+	}
+
+	//the swept values of point <point>, as key=value pairs
+	private String describe(int point) {
+		StringBuilder values = new StringBuilder();
+		for(int k = 0; k < sweptKeys.length; k++) {
+			values.append(k == 0 ? "" : ", ").append(sweptKeys[k]).append('=').append(points.get(point)[k]);
+		}
+		return values.toString();
+	}
+
+	//the values for one key of a grid - a list, or from:to:count
+	private static String[] gridValues(String key, String value) {
+		if(value.indexOf(':') < 0)
+			return value.split("\\s*,\\s*");
+
+		String[] range = value.split(":");
+		if(range.length != 3)
+			throw new IllegalArgumentException(SWEEP_PREFIX + key + " should be a list or from:to:count, not " + value);
+		double from = parseDouble(key, range[0]);
+		double to = parseDouble(key, range[1]);
+		int count = parseInt(key, range[2]);
+		if(count <= 0)
+			throw new IllegalArgumentException(SWEEP_PREFIX + key + " needs a count > 0");
+		String[] values = new String[count];
+		for(int i = 0; i < count; i++) {
+			values[i] = format(key, count == 1 ? from : from + (to - from) * i / (count - 1));
+		}
+		return values;
+	}
+
+	//every combination of values, the last key changing fastest
+	private void expandGrid(String[][] values, int k, String[] point) {
+		if(k == values.length) {
+			points.add(point.clone());
+			return;
+		}
+		for(String value : values[k]) {
+			point[k] = value;
+			expandGrid(values, k + 1, point);
+		}
+	}
+
+	//<samples> points, with each key's range cut into <samples> strata and every stratum used exactly once
+	private void expandLatinHypercube(Properties properties, int samples) {
+		StreamRandom rng = new RandomStreams(masterSeed).newGenerator();
+		String[][] values = new String[sweptKeys.length][samples];
+		for(int k = 0; k < sweptKeys.length; k++) {
+			String key = sweptKeys[k];
+			String[] range = properties.getProperty(SWEEP_PREFIX + key).trim().split(":");
+			if(range.length < 2)
+				throw new IllegalArgumentException(SWEEP_PREFIX + key + " should be from:to for an lhs design");
+			double from = parseDouble(key, range[0]);
+			double to = parseDouble(key, range[1]);
+
+			//shuffle which stratum each sample gets
+			rng.select(0, RandomStreams.PHASE_SETUP, k);
+			int[] strata = new int[samples];
+			for(int i = 0; i < samples; i++) {
+				strata[i] = i;
+			}
+			for(int i = samples - 1; i > 0; i--) {
+				int j = rng.nextInt(i + 1);
+				int swap = strata[i];
+				strata[i] = strata[j];
+				strata[j] = swap;
+			}
+			for(int i = 0; i < samples; i++) {
+				values[k][i] = format(key, from + (to - from) * (strata[i] + rng.nextDouble()) / samples);
+			}
+		}
+		for(int i = 0; i < samples; i++) {
+			String[] point = new String[sweptKeys.length];
+			for(int k = 0; k < sweptKeys.length; k++) {
+				point[k] = values[k][i];
+			}
+			points.add(point);
+		}
+	}
+
+	private static String format(String key, double value) {
+		for(String whole : WHOLE_NUMBER_KEYS) {
+			if(whole.equals(key))
+				return Long.toString(Math.round(value));
+		}
+		return Double.toString(value);
+	}
+
+	private static int parseInt(String key, String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException(key + " should be a whole number, not " + value);
+		}
+	}
+
+	private static double parseDouble(String key, String value) {
+		try {
+			return Double.parseDouble(value.trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException(key + " should be a number, not " + value);
+		}
+	}
+
+	public int getNumPoints() {
+		return points.size();
+	}
+
+	public String[] getSweptKeys() {
+		return sweptKeys.clone();
+	}
+
+	/**
+	 * @return the swept values of point <point>, in the same order as getSweptKeys()
+	 */
+	public String[] getValues(int point) {
+		return points.get(point).clone();
+	}
+
+	/**
+	 * @return the parameters for point <point> - they were checked when the sweep was read
+	 */
+	public ModelParameters getParameters(int point) {
+		Properties properties = new Properties();
+		properties.putAll(base);
+		String[] values = points.get(point);
+		for(int k = 0; k < sweptKeys.length; k++) {
+			properties.setProperty(sweptKeys[k], values[k]);
+		}
+		ModelParameters params = ParameterFile.fromProperties(properties);
+		if(properties.getProperty("seed") == null)
+			params.seed = new RandomStreams(masterSeed).replicateSeed(point);
+		return params;
+	}
+
+	/**
+	 * @return how many runs to do at once - the threads value in the file, or every core
+	 */
+	public int getThreads() {
+		int threads = ParameterFile.fromProperties(base).threads;
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+}
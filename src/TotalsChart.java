@@ -0,0 +1,146 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * The graph of how many people are of each type at every timestep, kept in an image that only ever gets added to.
+ * The axes and labels are drawn once, and each update() only draws the timesteps since the last one,
+ * so a frame costs the same however long the run has been going.
+ *
+ * When there are more timesteps than pixels across, every column of pixels gets one line per type, from the lowest
+ * to the highest value of the timesteps that land in it - so the spikes still show, and the whole graph is never
+ * more lines than it is pixels wide.
+ *
+ */
+public class TotalsChart {
+
+	//the types we graph, in the order they're drawn
+	private static final int[] TYPES = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+
+	private static final int DOT_WIDTH = 2;
+	private static final int DOT_HEIGHT = 2;
+
+	private int width;
+	private int height;
+	private int totalNumTimesteps;
+	private int numPeople;
+	private Color[] typeColors;
+	private Color background;
+
+	//where the plot itself is inside the image
+	private int minX, maxX, minY, maxY;
+
+	//are there more timesteps than columns?
+	private boolean downsampled;
+
+	private BufferedImage image;
+	private Graphics2D g2d;
+
+	//how many timesteps have been drawn so far
+	private int drawnUpTo;
+
+	/**
+	 * A chart of <bounds>' size, for a run of <totalNumTimesteps> timesteps with <numPeople> people,
+	 * coloring each type with typeColors[type]
+	 */
+	public TotalsChart(Rectangle bounds, int totalNumTimesteps, int numPeople, Color[] typeColors, Color background) {
+		this.width = bounds.width;
+		this.height = bounds.height;
+		this.totalNumTimesteps = totalNumTimesteps;
+		this.numPeople = numPeople;
+		this.typeColors = typeColors;
+		this.background = background;
+		minX = 50;
+		maxX = width - 10;
+		minY = 10;
+		maxY = height - 50;
+		downsampled = totalNumTimesteps > maxX - minX;
+
+		image = new BufferedImage(width + 1, height + 1, BufferedImage.TYPE_INT_RGB);
+		g2d = image.createGraphics();
+		clear();
+	}
+
+	//start again with just the axes
+	private void clear() {
+		g2d.setColor(background);
+		g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+		//draw the outline of the graph bounding rectangle
+		g2d.setColor(Color.BLACK);
+		g2d.drawRect(0, 0, width, height);
+
+		//draw & label the axies (total num people on Y, total num timesteps on X
+		g2d.setStroke(new BasicStroke(2));
+		g2d.drawLine(getX(0), getY(0), getX(0), getY(numPeople));
+		g2d.drawLine(getX(0), getY(0), getX(totalNumTimesteps), getY(0));
+
+		//draw axis labels
+		g2d.setFont(new Font("Serif", Font.PLAIN, 12));
+		for(int i = 0; i <= totalNumTimesteps; i += Math.max(1, totalNumTimesteps / 10))
+			g2d.drawString(""+i, getX(i), getY(0) + 20);
+		g2d.drawString("Number of timesteps", getX(totalNumTimesteps/2), getY(0) + 40);
+		for(int i = 0; i <= numPeople; i += Math.max(1, numPeople / 10))
+			g2d.drawString(""+i, getX(0) - 20, getY(i));
+		g2d.rotate(-1*Math.PI/2, getX(0), getY(numPeople/2));
+		g2d.drawString("Number of People", getX(0), getY(numPeople/2) - 30);
+		g2d.rotate(Math.PI/2, getX(0), getY(numPeople/2));
+
+		g2d.setStroke(new BasicStroke(1));
+		drawnUpTo = 0;
+	}
+
+	/**
+	 * Draw the first <upTo> timesteps of <totals> (as SimulationEngine.getTotals() gives them), if they aren't already
+	 * @return the image - it's reused, so draw it rather than hanging on to it
+	 */
+	public BufferedImage update(int[][] totals, int upTo) {
+		upTo = Math.min(upTo, totalNumTimesteps);
+		if(upTo < drawnUpTo)
+			clear();
+		if(upTo <= drawnUpTo)
+			return image;
+
+		for(int type : TYPES) {
+			int[] values = totals[type];
+			g2d.setColor(typeColors[type]);
+			if(drawnUpTo == 0)
+				g2d.fillRect(getX(0), getY(values[0]), DOT_WIDTH, DOT_HEIGHT);
+
+			//a line from each timestep to the next, or one line per column from the lowest to the highest of its timesteps.
+			//a column's line starts from the timestep before it, so it joins up with the column before
+			int t = Math.max(1, drawnUpTo);
+			while(t < upTo) {
+				if(!downsampled) {
+					g2d.drawLine(getX(t-1), getY(values[t-1]), getX(t), getY(values[t]));
+					t++;
+				} else {
+					int column = getX(t);
+					int low = getY(values[t-1]);
+					int high = low;
+					for(; t < upTo && getX(t) == column; t++) {
+						low = Math.min(low, getY(values[t]));
+						high = Math.max(high, getY(values[t]));
+					}
+					g2d.drawLine(column, low, column, high);
+				}
+			}
+		}
+		drawnUpTo = upTo;
+		return image;
+	}
+
+	//the X location in the image of timestep <value>
+	private int getX(int value) {
+		return (int)((maxX - minX) * ((double)value / totalNumTimesteps) + minX);
+	}
+
+	//the Y location in the image of <value> people
+	private int getY(int value) {
+		return (int)(maxY - (maxY - minY) * ((double)value / numPeople));
+	}
+}
@@ -0,0 +1,384 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Writes out every step of a run as it happens, so the results of a long run are saved as it goes instead of only
+ * living in the engine's totals - with ModelParameters.keepAllTotals off, the engine only keeps the last few timesteps,
+ * and this is where the rest are.  Each row is one timestep: the number of each type at its start, then how many
+ * people got infected, recovered and lost their immunity during it - the same columns as BatchRunner.writeTotals() -
+ * optionally followed by the number of each type in every location.
+ *
+ * The engine hands over each row at the end of its step, without measuring anything.  The simulation thread only
+ * copies the row into a reused buffer and hands it over a bounded queue.  A writer thread
+ * takes rows off the queue in batches and does all of the formatting and I/O, so the simulation only ever waits if it
+ * gets a whole queue of rows ahead of the disk.  getStalls() says how often that happened.  The writer flushes whenever
+ * the simulation goes quiet for a moment, so a paused or killed run has everything up to then saved.
+ *
+ * Rows are written as CSV or in a compact binary format that keeps each column together:
+ *
+ *   int    MAGIC, then VERSION
+ *   int    the number of columns, then each column's name (writeUTF)
+ *   blocks of up to BLOCK_ROWS rows, each an int row count then every column's values for those rows as ints
+ *
+ * one block after another until the end of the file
+ *
+ * which readBinary() reads back.
+ *
+ *   TrajectoryOutput output = new TrajectoryOutput(engine, new FileOutputStream("run.bin"), TrajectoryOutput.BINARY, true);
+ *   engine.run(params.numTimesteps);
+ *   output.close();
+ *
+ */
+public class TrajectoryOutput {
+
+	//the formats we can write
+	public static final int CSV = 0;
+	public static final int BINARY = 1;
+
+	//starts a binary file - "DMTR"
+	public static final int MAGIC = 0x444D5452;
+	public static final int VERSION = 1;
+
+	//how many rows a binary block holds at most
+	public static final int BLOCK_ROWS = 1024;
+
+	//how many rows can be waiting to be written - fewer for wide rows, so the rows waiting and the block being
+	//filled never take more than QUEUE_BYTES each, but never fewer than MIN_QUEUE_ROWS
+	private static final int QUEUE_ROWS = 4096;
+	private static final int MIN_QUEUE_ROWS = 16;
+	private static final long QUEUE_BYTES = 32 << 20;
+
+	//how long the writer waits for more rows before flushing what it has
+	private static final long IDLE_FLUSH_MILLIS = 200;
+
+	//the columns every row starts with
+	private static final String[] STEP_COLUMNS = {"timestep", "susceptible", "infective", "recovered",
+		"new_infections", "new_recoveries", "immunity_lost"};
+	private static final int[] TYPES = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+	private static final String[] TYPE_NAMES = {"susceptible", "infective", "recovered"};
+
+	private SimulationEngine engine;
+	private int format;
+	private String[] columns;
+	private int numLocations;
+
+	//every location's counts at the start of the step being run, for that step's row
+	private long[] locationCounts;
+
+	//rows ready to be filled, and rows waiting to be written.  END tells the writer there are no more
+	private int queueRows;
+	private int blockRows;
+	private BlockingQueue<long[]> free;
+	private BlockingQueue<long[]> written;
+	private static final long[] END = new long[0];
+
+	private Thread writerThread;
+	private volatile IOException failure;
+	private volatile long stalls;
+	private boolean closed;
+
+	/**
+	 * Write every step <engine> runs from now on to <out> in <format>, with every location's counts if <byLocation>
+	 */
+	public TrajectoryOutput(SimulationEngine engine, OutputStream out, int format, boolean byLocation) throws IOException {
+		this(out, format, byLocation ? engine.getLocations().getNumLocations() : 0);
+		this.engine = engine;
+		captureLocationCounts();
+		engine.setOutput(this);
+	}
+
+	/**
+	 * Write the rows given to addStep() to <out> in <format>, with <numLocations> locations' counts in each row
+	 */
+	public TrajectoryOutput(OutputStream out, int format, int numLocations) throws IOException {
+		if(format != CSV && format != BINARY)
+			throw new IllegalArgumentException("format should be CSV or BINARY");
+		this.format = format;
+		this.numLocations = numLocations;
+		columns = new String[STEP_COLUMNS.length + numLocations * TYPES.length];
+		System.arraycopy(STEP_COLUMNS, 0, columns, 0, STEP_COLUMNS.length);
+		for(int loc = 0; loc < numLocations; loc++) {
+			for(int k = 0; k < TYPES.length; k++) {
+				columns[STEP_COLUMNS.length + loc * TYPES.length + k] = "location" + loc + "_" + TYPE_NAMES[k];
+			}
+		}
+		locationCounts = new long[numLocations * TYPES.length];
+		queueRows = (int) Math.max(MIN_QUEUE_ROWS, Math.min(QUEUE_ROWS, QUEUE_BYTES / (8L * columns.length)));
+		blockRows = (int) Math.max(1, Math.min(BLOCK_ROWS, QUEUE_BYTES / (4L * columns.length)));
+		free = new ArrayBlockingQueue<long[]>(queueRows);
+		written = new ArrayBlockingQueue<long[]>(queueRows + 1);
+		for(int i = 0; i < queueRows; i++) {
+			free.add(new long[columns.length]);
+		}
+
+		final OutputStream stream = new BufferedOutputStream(out, 1 << 16);
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeRows(stream);
+			}
+		}, "trajectory writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	//remember where everyone is now, for the next step's row
+	private void captureLocationCounts() {
+		if(numLocations == 0)
+			return;
+		CompartmentCounters counters = engine.getCounters();
+		for(int loc = 0; loc < numLocations; loc++) {
+			for(int k = 0; k < TYPES.length; k++) {
+				locationCounts[loc * TYPES.length + k] = counters.getCount(loc, TYPES[k]);
+			}
+		}
+	}
+
+	/*
+	 * Write the row of the step that was just run - timestep <t>, which is at <index> of <totals> and <incidence> -
+	 * with the location counts from the start of the step.  Called by the engine, or a DistributedRunner, at the end
+	 * of every step
+	 */
+	void stepFinished(int t, int index, int[][] totals, int[][] incidence) {
+		long[] row = takeRow();
+		if(row == null)
+			return;
+		fill(row, t, index, totals, incidence);
+		System.arraycopy(locationCounts, 0, row, STEP_COLUMNS.length, locationCounts.length);
+		written.add(row);
+		captureLocationCounts();
+	}
+
+	/**
+	 * Write a row for timestep <t> of <totals> and <incidence>, as SimulationEngine.getTotals() and getIncidence()
+	 * give them - for runs that don't hand their rows over as they go, like a CompartmentModel's.  Location counts are left at 0
+	 */
+	public void addStep(int t, int[][] totals, int[][] incidence) {
+		long[] row = takeRow();
+		if(row == null)
+			return;
+		fill(row, t, t, totals, incidence);
+		for(int k = STEP_COLUMNS.length; k < row.length; k++) {
+			row[k] = 0;
+		}
+		written.add(row);
+	}
+
+	private static void fill(long[] row, int t, int index, int[][] totals, int[][] incidence) {
+		row[0] = t;
+		row[1] = totals[Person.SUSCEPTIBLE][index];
+		row[2] = totals[Person.INFECTIVE][index];
+		row[3] = totals[Person.RECOVERED][index];
+		row[4] = incidence[CompartmentCounters.INFECTION][index];
+		row[5] = incidence[CompartmentCounters.RECOVERY][index];
+		row[6] = incidence[CompartmentCounters.IMMUNITY_LOST][index];
+	}
+
+	//a free row, waiting for the writer if they're all full.  null once the writer has failed
+	private long[] takeRow() {
+		if(failure != null)
+			return null;
+		long[] row = free.poll();
+		if(row != null)
+			return row;
+		stalls++;
+		try {
+			while(failure == null) {
+				row = free.poll(100, TimeUnit.MILLISECONDS);
+				if(row != null)
+					return row;
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	/*
+	 * The writer thread: take whatever rows are waiting, write them all, and only flush when there's nothing left waiting
+	 */
+	private void writeRows(OutputStream stream) {
+		List<long[]> batch = new ArrayList<long[]>(queueRows);
+		try {
+			Writer csv = null;
+			DataOutputStream binary = null;
+			int[][] block = null;
+			int filled = 0;
+			StringBuilder line = new StringBuilder();
+			if(format == CSV) {
+				csv = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+				csv.write(String.join(",", columns) + "\n");
+			} else {
+				binary = new DataOutputStream(stream);
+				binary.writeInt(MAGIC);
+				binary.writeInt(VERSION);
+				binary.writeInt(columns.length);
+				for(String column : columns) {
+					binary.writeUTF(column);
+				}
+				block = new int[columns.length][blockRows];
+			}
+
+			boolean ended = false;
+			while(!ended) {
+				//once nothing has come for a while, get what we have onto the disk
+				long[] first = written.poll(IDLE_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					if(binary != null && filled > 0) {
+						writeBlock(binary, block, filled);
+						filled = 0;
+					}
+					if(csv != null) csv.flush(); else binary.flush();
+					first = written.take();
+				}
+				batch.add(first);
+				written.drainTo(batch);
+				for(long[] row : batch) {
+					if(row == END) {
+						ended = true;
+						break;
+					}
+					if(csv != null) {
+						line.setLength(0);
+						for(int k = 0; k < row.length; k++) {
+							if(k > 0) line.append(',');
+							line.append(row[k]);
+						}
+						line.append('\n');
+						csv.append(line);
+					} else {
+						for(int k = 0; k < row.length; k++) {
+							block[k][filled] = (int) row[k];
+						}
+						if(++filled == blockRows) {
+							writeBlock(binary, block, filled);
+							filled = 0;
+						}
+					}
+					free.add(row);
+				}
+				batch.clear();
+			}
+			if(binary != null && filled > 0)
+				writeBlock(binary, block, filled);
+			if(csv != null) csv.close(); else binary.close();
+		} catch(IOException e) {
+			failure = e;
+		} catch(InterruptedException e) {
+			failure = new IOException("Interrupted while writing", e);
+		} finally {
+			//let anything waiting for a free row give up
+			free.clear();
+		}
+	}
+
+	private static void writeBlock(DataOutputStream binary, int[][] block, int rows) throws IOException {
+		binary.writeInt(rows);
+		for(int[] column : block) {
+			for(int r = 0; r < rows; r++) {
+				binary.writeInt(column[r]);
+			}
+		}
+	}
+
+	/**
+	 * Stop taking rows from the engine, write whatever is still waiting, and close the output
+	 * @throws IOException if anything couldn't be written
+	 */
+	public void close() throws IOException {
+		if(closed)
+			return;
+		closed = true;
+		if(engine != null)
+			engine.setOutput(null);
+		written.add(END);
+		try {
+			writerThread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while finishing the output", e);
+		}
+		if(failure != null)
+			throw failure;
+	}
+
+	/**
+	 * @return how many times a step had to wait for the writer to catch up
+	 */
+	public long getStalls() {
+		return stalls;
+	}
+
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Read a file written in the BINARY format
+	 * @param names gets the column names, unless it's null
+	 * @return the values, values[column][row]
+	 * @throws IOException if it can't be read, or isn't one of ours
+	 */
+	public static int[][] readBinary(File file, List<String> names) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+			if(data.readInt() != MAGIC)
+				throw new IOException(file + " isn't a trajectory file");
+			int version = data.readInt();
+			if(version != VERSION)
+				throw new IOException(file + " is version " + version + " - we can only read " + VERSION);
+			int numColumns = data.readInt();
+			for(int k = 0; k < numColumns; k++) {
+				String name = data.readUTF();
+				if(names != null) names.add(name);
+			}
+
+			int[][] values = new int[numColumns][0];
+			int numRows = 0;
+			while(true) {
+				int rows;
+				try {
+					rows = data.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+				if(numRows + rows > values[0].length) {
+					for(int k = 0; k < numColumns; k++) {
+						values[k] = Arrays.copyOf(values[k], Math.max(values[k].length * 2, numRows + rows));
+					}
+				}
+				for(int k = 0; k < numColumns; k++) {
+					for(int r = 0; r < rows; r++) {
+						values[k][numRows + r] = data.readInt();
+					}
+				}
+				numRows += rows;
+			}
+			for(int k = 0; k < numColumns; k++) {
+				values[k] = Arrays.copyOf(values[k], numRows);
+			}
+			return values;
+		} finally {
+			in.close();
+		}
+	}
+}
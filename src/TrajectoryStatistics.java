@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * @author Will Richard and Andrew Calkins
+ * Sums up lots of runs' S/I/R trajectories as they finish, without keeping any of them.
+ * For every timestep and type it keeps the mean, the variance and a few quantiles, and for every run
+ * it keeps when the number of infectives peaked and how high, so we can see how the peak time is spread out.
+ *
+ * The quantiles are P-squared estimates, so the numbers depend a little on the order the runs are added in -
+ * add them in a fixed order (like EnsembleRunner does) to get the same numbers every time.
+ *
+ */
+public class TrajectoryStatistics {
+
+	//the types we keep track of, in the order they're written out
+	private static final int[] TYPES = {Person.SUSCEPTIBLE, Person.INFECTIVE, Person.RECOVERED};
+	private static final String[] TYPE_NAMES = {"susceptible", "infective", "recovered"};
+
+	private int numTimesteps;
+	private double[] quantiles;
+
+	//stats[type][timestep] and quantileEstimates[type][quantile][timestep]
+	private RunningStatistics[][] stats;
+	private P2Quantile[][][] quantileEstimates;
+
+	//when and how high the infectives peaked, and how many runs peaked at each timestep
+	private RunningStatistics peakTime = new RunningStatistics();
+	private RunningStatistics peakSize = new RunningStatistics();
+	private P2Quantile[] peakTimeQuantiles;
+	private long[] peakTimeCounts;
+
+	private long numRuns;
+
+	/**
+	 * Keep track of runs of <numTimesteps> timesteps, estimating the given <quantiles> (like .05, .5 and .95)
+	 */
+	public TrajectoryStatistics(int numTimesteps, double[] quantiles) {
+		this.numTimesteps = numTimesteps;
+		this.quantiles = quantiles.clone();
+		stats = new RunningStatistics[TYPES.length][numTimesteps];
+		quantileEstimates = new P2Quantile[TYPES.length][quantiles.length][numTimesteps];
+		for(int type = 0; type < TYPES.length; type++) {
+			for(int t = 0; t < numTimesteps; t++) {
+				stats[type][t] = new RunningStatistics();
+				for(int q = 0; q < quantiles.length; q++) {
+					quantileEstimates[type][q][t] = new P2Quantile(quantiles[q]);
+				}
+			}
+		}
+		peakTimeQuantiles = new P2Quantile[quantiles.length];
+		for(int q = 0; q < quantiles.length; q++) {
+			peakTimeQuantiles[q] = new P2Quantile(quantiles[q]);
+		}
+		peakTimeCounts = new long[Math.max(1, numTimesteps)];
+	}
+
+	/**
+	 * Add one run's totals - totals[type][timestep], as SimulationEngine.getTotals() gives them -
+	 * for its first <numRecorded> timesteps
+	 */
+	public void add(int[][] totals, int numRecorded) {
+		numRecorded = Math.min(numRecorded, numTimesteps);
+		for(int type = 0; type < TYPES.length; type++) {
+			int[] counts = totals[TYPES[type]];
+			for(int t = 0; t < numRecorded; t++) {
+				stats[type][t].add(counts[t]);
+				for(int q = 0; q < quantiles.length; q++) {
+					quantileEstimates[type][q][t].add(counts[t]);
+				}
+			}
+		}
+
+		//find the first timestep with the most infectives
+		int[] infectives = totals[Person.INFECTIVE];
+		int peak = 0;
+		for(int t = 1; t < numRecorded; t++) {
+			if(infectives[t] > infectives[peak])
+				peak = t;
+		}
+		if(numRecorded > 0) {
+			peakTime.add(peak);
+			peakSize.add(infectives[peak]);
+			for(P2Quantile estimate : peakTimeQuantiles) {
+				estimate.add(peak);
+			}
+			peakTimeCounts[peak]++;
+		}
+		numRuns++;
+	}
+
+	public long getNumRuns() {
+		return numRuns;
+	}
+
+	/**
+	 * @return the stats for people of type <type> (like Person.INFECTIVE) at <timestep>
+	 */
+	public RunningStatistics get(int type, int timestep) {
+		return stats[indexOf(type)][timestep];
+	}
+
+	/**
+	 * @return the estimate of quantile number <quantile> (in the order given to the constructor) for <type> at <timestep>
+	 */
+	public double getQuantile(int type, int quantile, int timestep) {
+		return quantileEstimates[indexOf(type)][quantile][timestep].getQuantile();
+	}
+
+	public RunningStatistics getPeakTime() {
+		return peakTime;
+	}
+
+	public RunningStatistics getPeakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * @return how many runs peaked at each timestep
+	 */
+	public long[] getPeakTimeCounts() {
+		return peakTimeCounts.clone();
+	}
+
+	private static int indexOf(int type) {
+		for(int i = 0; i < TYPES.length; i++) {
+			if(TYPES[i] == type)
+				return i;
+		}
+		throw new IllegalArgumentException("No such type " + type);
+	}
+
+	/**
+	 * Write one row per timestep - the mean, standard deviation and quantiles of every type - as CSV
+	 */
+	public void writeTrajectories(Writer out) throws IOException {
+		StringBuilder line = new StringBuilder("timestep");
+		for(String name : TYPE_NAMES) {
+			line.append(',').append(name).append("_mean,").append(name).append("_sd");
+			for(double q : quantiles) {
+				line.append(',').append(name).append("_q").append(q);
+			}
+		}
+		out.write(line.append('\n').toString());
+
+		for(int t = 0; t < numTimesteps; t++) {
+			line.setLength(0);
+			line.append(t);
+			for(int type = 0; type < TYPES.length; type++) {
+				line.append(',').append(stats[type][t].getMean()).append(',').append(stats[type][t].getStandardDeviation());
+				for(int q = 0; q < quantiles.length; q++) {
+					line.append(',').append(quantileEstimates[type][q][t].getQuantile());
+				}
+			}
+			out.write(line.append('\n').toString());
+		}
+	}
+
+	/**
+	 * Write how many runs peaked at each timestep as CSV
+	 */
+	public void writePeakTimes(Writer out) throws IOException {
+		out.write("timestep,runs\n");
+		for(int t = 0; t < peakTimeCounts.length; t++) {
+			out.write(t + "," + peakTimeCounts[t] + "\n");
+		}
+	}
+
+	/**
+	 * @return a few lines about the peak of the epidemic
+	 */
+	public String summary() {
+		StringBuilder summary = new StringBuilder();
+		summary.append(numRuns).append(" runs\n");
+		summary.append("peak time: mean ").append(peakTime.getMean()).append(", sd ").append(peakTime.getStandardDeviation());
+		for(P2Quantile estimate : peakTimeQuantiles) {
+			summary.append(", q").append(estimate.getP()).append(' ').append(estimate.getQuantile());
+		}
+		summary.append('\n');
+		summary.append("peak infectives: mean ").append(peakSize.getMean()).append(", sd ").append(peakSize.getStandardDeviation())
+			.append(", min ").append(peakSize.getMin()).append(", max ").append(peakSize.getMax()).append('\n');
+		return summary.toString();
+	}
+}